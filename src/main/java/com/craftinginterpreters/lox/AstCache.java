@@ -0,0 +1,616 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import static com.craftinginterpreters.lox.Token.TokenType;
+
+// Resolved programs saved to disk under a hash of their source, so a script that
+// has not changed skips the lexer, parser and resolver on its next run.
+final class AstCache {
+    // Bump whenever the AST, or what the resolver records in it, changes.
+    private static final int VERSION = 2;
+    private static final int MAGIC = 0x4c4f5841;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    // Node tags. Zero stands for a missing node, such as a var without an initializer.
+    private static final byte NONE = 0;
+
+    private static final byte ASSIGN = 1;
+    private static final byte BINARY = 2;
+    private static final byte CALL = 3;
+    private static final byte GET = 4;
+    private static final byte GROUPING = 5;
+    private static final byte LITERAL = 6;
+    private static final byte LOGICAL = 7;
+    private static final byte SET = 8;
+    private static final byte SUPER = 9;
+    private static final byte THIS = 10;
+    private static final byte UNARY = 11;
+    private static final byte VARIABLE = 12;
+
+    private static final byte BLOCK = 1;
+    private static final byte CLASS = 2;
+    private static final byte EXPRESSION = 3;
+    private static final byte FUNCTION = 4;
+    private static final byte IF = 5;
+    private static final byte PRINT = 6;
+    private static final byte RETURN = 7;
+    private static final byte VAR = 8;
+    private static final byte WHILE = 9;
+
+    private static final byte NIL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte NUMBER = 3;
+    private static final byte STRING = 4;
+
+    private final Path directory;
+
+    AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // $JLOX_CACHE, or .cache/jlox in the user's home.
+    static Path directory() {
+        String directory = System.getenv("JLOX_CACHE");
+        if (directory != null) return Paths.get(directory);
+        return Paths.get(System.getProperty("user.home"), ".cache", "jlox");
+    }
+
+    // A hash of the script's bytes and of the cache format.
+    static String key(ByteBuffer source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        digest.update(source.duplicate());
+        digest.update(ByteBuffer.allocate(4).putInt(0, VERSION));
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // The program saved under key, or null if there is none that can be read.
+    List<Stmt> load(String key) {
+        Path path = this.path(key);
+        if (!Files.isRegularFile(path)) return null;
+
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (bytes.getInt() != MAGIC || bytes.getInt() != VERSION) return null;
+            // A damaged entry could otherwise read as a different program.
+            if (bytes.getInt() != AstCache.checksum(bytes)) return null;
+
+            List<Stmt> statements = new Reader(bytes).statements();
+            return bytes.hasRemaining() ? null : statements;
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException
+                 | IllegalArgumentException | ClassCastException e) {
+            // A damaged entry is a miss, and is replaced on the next store.
+            return null;
+        }
+    }
+
+    // Saves a resolved program. Failing to is not an error; the script just
+    // runs uncached next time.
+    void store(String key, List<Stmt> statements) {
+        try {
+            ByteArrayOutputStream program = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(program);
+            new Writer(out).statements(statements);
+            out.flush();
+
+            ByteBuffer bytes = ByteBuffer.allocate(12 + program.size());
+            bytes.putInt(MAGIC).putInt(VERSION).putInt(0).put(program.toByteArray());
+            bytes.putInt(8, AstCache.checksum(bytes.position(12)));
+
+            // Written aside and moved into place, so readers never see half an entry.
+            Files.createDirectories(this.directory);
+            Path temporary = Files.createTempFile(this.directory, key, ".tmp");
+            try {
+                Files.write(temporary, bytes.array());
+                Files.move(temporary, this.path(key), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // Leave the cache as it was.
+        }
+    }
+
+    private Path path(String key) {
+        return this.directory.resolve(key + ".ast");
+    }
+
+    // A checksum of what is left in bytes, leaving its position where it was.
+    private static int checksum(ByteBuffer bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static final class Writer implements Expr.Visitor<Void>, Stmt.Visitor {
+        private final DataOutputStream out;
+        // Each name is written out once, then referred to by its index.
+        private final Map<Symbol, Integer> symbols = new HashMap<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void statements(List<? extends Stmt> statements) {
+            this.writeInt(statements.size());
+            for (Stmt statement : statements) {
+                this.statement(statement);
+            }
+        }
+
+        private void statement(Stmt stmt) {
+            if (stmt == null) {
+                this.writeByte(NONE);
+            } else {
+                stmt.accept(this);
+            }
+        }
+
+        private void expression(Expr expr) {
+            if (expr == null) {
+                this.writeByte(NONE);
+            } else {
+                expr.accept(this);
+            }
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            this.writeByte(ASSIGN);
+            this.token(expr.name);
+            this.expression(expr.value);
+            this.writeInt(expr.depth);
+            this.writeInt(expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            this.writeByte(BINARY);
+            this.expression(expr.left);
+            this.token(expr.operator);
+            this.expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            this.writeByte(CALL);
+            this.expression(expr.callee);
+            this.token(expr.paren);
+            this.writeInt(expr.arguments.size());
+            for (Expr argument : expr.arguments) {
+                this.expression(argument);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            this.writeByte(GET);
+            this.expression(expr.object);
+            this.token(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            this.writeByte(GROUPING);
+            this.expression(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            this.writeByte(LITERAL);
+            if (expr.value == null) {
+                this.writeByte(NIL);
+            } else if (expr.value instanceof Boolean value) {
+                this.writeByte(value ? TRUE : FALSE);
+            } else if (expr.value instanceof Double value) {
+                this.writeByte(NUMBER);
+                this.writeDouble(value);
+            } else {
+                this.writeByte(STRING);
+                this.writeString((String) expr.value);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            this.writeByte(LOGICAL);
+            this.expression(expr.left);
+            this.token(expr.operator);
+            this.expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            this.writeByte(SET);
+            this.expression(expr.object);
+            this.token(expr.name);
+            this.expression(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitSuperExpr(Expr.Super expr) {
+            this.writeByte(SUPER);
+            this.token(expr.keyword);
+            this.token(expr.method);
+            this.writeInt(expr.depth);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            this.writeByte(THIS);
+            this.token(expr.keyword);
+            this.writeInt(expr.depth);
+            this.writeInt(expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            this.writeByte(UNARY);
+            this.token(expr.operator);
+            this.expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            this.writeByte(VARIABLE);
+            this.token(expr.name);
+            this.writeInt(expr.depth);
+            this.writeInt(expr.slot);
+            return null;
+        }
+
+        @Override
+        public void visitBlockStmt(Stmt.Block stmt) {
+            this.writeByte(BLOCK);
+            this.statements(stmt.statements);
+            this.writeInt(stmt.frameSize);
+        }
+
+        @Override
+        public void visitClassStmt(Stmt.Class stmt) {
+            this.writeByte(CLASS);
+            this.token(stmt.name);
+            this.expression(stmt.superclass);
+            this.statements(stmt.methods);
+            this.writeInt(stmt.slot);
+        }
+
+        @Override
+        public void visitExpressionStmt(Stmt.Expression stmt) {
+            this.writeByte(EXPRESSION);
+            this.expression(stmt.expression);
+        }
+
+        @Override
+        public void visitFunctionStmt(Stmt.Function stmt) {
+            this.writeByte(FUNCTION);
+            this.token(stmt.name);
+            this.writeInt(stmt.params.size());
+            for (Token param : stmt.params) {
+                this.token(param);
+            }
+            this.statements(stmt.body);
+            this.writeInt(stmt.slot);
+            this.writeInt(stmt.frameSize);
+            this.writeByte(stmt.isMethod ? 1 : 0);
+        }
+
+        @Override
+        public void visitIfStmt(Stmt.If stmt) {
+            this.writeByte(IF);
+            this.expression(stmt.condition);
+            this.statement(stmt.thenBranch);
+            this.statement(stmt.elseBranch);
+        }
+
+        @Override
+        public void visitPrintStmt(Stmt.Print stmt) {
+            this.writeByte(PRINT);
+            this.expression(stmt.expression);
+        }
+
+        @Override
+        public void visitReturnStmt(Stmt.Return stmt) {
+            this.writeByte(RETURN);
+            this.token(stmt.keyword);
+            this.expression(stmt.value);
+        }
+
+        @Override
+        public void visitVarStmt(Stmt.Var stmt) {
+            this.writeByte(VAR);
+            this.token(stmt.name);
+            this.expression(stmt.initializer);
+            this.writeInt(stmt.slot);
+        }
+
+        @Override
+        public void visitWhileStmt(Stmt.While stmt) {
+            this.writeByte(WHILE);
+            this.expression(stmt.condition);
+            this.statement(stmt.body);
+        }
+
+        // Only what the later passes read: the type, the line and, for names, the symbol.
+        private void token(Token token) {
+            this.writeByte(token.type().ordinal());
+            this.writeInt(token.line());
+            if (token.type() == TokenType.IDENT) this.symbol(token.symbol());
+        }
+
+        private void symbol(Symbol symbol) {
+            Integer index = this.symbols.get(symbol);
+            if (index != null) {
+                this.writeInt(index);
+                return;
+            }
+
+            // The next index, followed by the name it stands for.
+            this.writeInt(this.symbols.size());
+            this.writeString(symbol.name);
+            this.symbols.put(symbol, this.symbols.size());
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.writeInt(bytes.length);
+            try {
+                this.out.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeByte(int value) {
+            try {
+                this.out.writeByte(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeInt(int value) {
+            try {
+                this.out.writeInt(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeDouble(double value) {
+            try {
+                this.out.writeDouble(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final ByteBuffer in;
+        private final List<Symbol> symbols = new ArrayList<>();
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        List<Stmt> statements() {
+            int count = this.count();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(this.statement());
+            }
+            return statements;
+        }
+
+        private Stmt statement() {
+            byte tag = this.in.get();
+            switch (tag) {
+                case NONE -> {
+                    return null;
+                }
+                case BLOCK -> {
+                    Stmt.Block stmt = new Stmt.Block(this.statements());
+                    stmt.frameSize = this.in.getInt();
+                    return stmt;
+                }
+                case CLASS -> {
+                    Token name = this.token();
+                    Expr.Variable superclass = (Expr.Variable) this.expression();
+                    List<Stmt.Function> methods = new ArrayList<>();
+                    for (Stmt method : this.statements()) {
+                        methods.add((Stmt.Function) method);
+                    }
+
+                    Stmt.Class stmt = new Stmt.Class(name, superclass, methods);
+                    stmt.slot = this.in.getInt();
+                    return stmt;
+                }
+                case EXPRESSION -> {
+                    return new Stmt.Expression(this.expression());
+                }
+                case FUNCTION -> {
+                    return this.function();
+                }
+                case IF -> {
+                    return new Stmt.If(this.expression(), this.statement(), this.statement());
+                }
+                case PRINT -> {
+                    return new Stmt.Print(this.expression());
+                }
+                case RETURN -> {
+                    return new Stmt.Return(this.token(), this.expression());
+                }
+                case VAR -> {
+                    Stmt.Var stmt = new Stmt.Var(this.token(), this.expression());
+                    stmt.slot = this.in.getInt();
+                    return stmt;
+                }
+                case WHILE -> {
+                    return new Stmt.While(this.expression(), this.statement());
+                }
+            }
+
+            throw new IllegalArgumentException("Unknown statement tag " + tag + ".");
+        }
+
+        private Stmt.Function function() {
+            Token name = this.token();
+            int arity = this.count();
+            List<Token> params = new ArrayList<>(arity);
+            for (int i = 0; i < arity; i++) {
+                params.add(this.token());
+            }
+
+            Stmt.Function stmt = new Stmt.Function(name, params, this.statements());
+            stmt.slot = this.in.getInt();
+            stmt.frameSize = this.in.getInt();
+            stmt.isMethod = this.in.get() != 0;
+            return stmt;
+        }
+
+        private Expr expression() {
+            byte tag = this.in.get();
+            switch (tag) {
+                case NONE -> {
+                    return null;
+                }
+                case ASSIGN -> {
+                    Expr.Assign expr = new Expr.Assign(this.token(), this.expression());
+                    expr.depth = this.in.getInt();
+                    expr.slot = this.in.getInt();
+                    return expr;
+                }
+                case BINARY -> {
+                    return new Expr.Binary(this.expression(), this.token(), this.expression());
+                }
+                case CALL -> {
+                    Expr callee = this.expression();
+                    Token paren = this.token();
+                    int count = this.count();
+                    List<Expr> arguments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        arguments.add(this.expression());
+                    }
+                    return new Expr.Call(callee, paren, arguments);
+                }
+                case GET -> {
+                    return new Expr.Get(this.expression(), this.token());
+                }
+                case GROUPING -> {
+                    return new Expr.Grouping(this.expression());
+                }
+                case LITERAL -> {
+                    return new Expr.Literal(this.literal());
+                }
+                case LOGICAL -> {
+                    return new Expr.Logical(this.expression(), this.token(), this.expression());
+                }
+                case SET -> {
+                    return new Expr.Set(this.expression(), this.token(), this.expression());
+                }
+                case SUPER -> {
+                    Expr.Super expr = new Expr.Super(this.token(), this.token());
+                    expr.depth = this.in.getInt();
+                    return expr;
+                }
+                case THIS -> {
+                    Expr.This expr = new Expr.This(this.token());
+                    expr.depth = this.in.getInt();
+                    expr.slot = this.in.getInt();
+                    return expr;
+                }
+                case UNARY -> {
+                    return new Expr.Unary(this.token(), this.expression());
+                }
+                case VARIABLE -> {
+                    Expr.Variable expr = new Expr.Variable(this.token());
+                    expr.depth = this.in.getInt();
+                    expr.slot = this.in.getInt();
+                    return expr;
+                }
+            }
+
+            throw new IllegalArgumentException("Unknown expression tag " + tag + ".");
+        }
+
+        private Object literal() {
+            byte tag = this.in.get();
+            return switch (tag) {
+                case NIL -> null;
+                case FALSE -> false;
+                case TRUE -> true;
+                case NUMBER -> this.in.getDouble();
+                case STRING -> this.string();
+                default -> throw new IllegalArgumentException("Unknown literal tag " + tag + ".");
+            };
+        }
+
+        private Token token() {
+            TokenType type = TYPES[this.in.get()];
+            int line = this.in.getInt();
+            Symbol symbol = type == TokenType.IDENT ? this.symbol() : null;
+            return new Token(type, null, 0, 0, line, symbol);
+        }
+
+        private Symbol symbol() {
+            int index = this.in.getInt();
+            if (index == this.symbols.size()) this.symbols.add(Symbol.of(this.string()));
+
+            return this.symbols.get(index);
+        }
+
+        private String string() {
+            int length = this.count();
+            String value = new String(this.in.array(), this.in.position(), length, StandardCharsets.UTF_8);
+            this.in.position(this.in.position() + length);
+            return value;
+        }
+
+        private int count() {
+            int count = this.in.getInt();
+            if (count < 0 || count > this.in.remaining()) {
+                throw new IllegalArgumentException("Bad count " + count + ".");
+            }
+            return count;
+        }
+    }
+}
@@ -25,12 +25,12 @@ class AstPrinter implements Expr.Visitor<String> {
         for (int i = 0; i < expr.arguments.size(); ++i) {
             arguments[i] = expr.arguments.get(i);
         }
-        return this.parenthesize(callee, arguments);
+        return this.parenthesize("call " + callee, arguments);
     }
 
     @Override
     public String visitGetExpr(Expr.Get expr) {
-        return this.parenthesize(expr.name.lexeme(), expr.object);
+        return "(get " + expr.object.accept(this) + " " + expr.name.lexeme() + ")";
     }
 
     @Override
@@ -45,12 +45,13 @@ class AstPrinter implements Expr.Visitor<String> {
 
     @Override
     public String visitLogicalExpr(Expr.Logical expr) {
-        return this.parenthesize(expr.operator.lexeme(), expr.left, expr.left);
+        return this.parenthesize(expr.operator.lexeme(), expr.left, expr.right);
     }
 
     @Override
     public String visitSetExpr(Expr.Set expr) {
-        return this.parenthesize(expr.name.lexeme(), expr.object, expr.value);
+        return "(set " + expr.object.accept(this) + " " + expr.name.lexeme() + " "
+                + expr.value.accept(this) + ")";
     }
 
     @Override
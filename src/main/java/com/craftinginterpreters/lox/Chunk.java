@@ -0,0 +1,39 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+final class Chunk {
+    byte[] code = new byte[8];
+    int[] lines = new int[8];
+    int count = 0;
+
+    Object[] constants = new Object[8];
+    int constantCount = 0;
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    void write(int b, int line) {
+        if (this.count == this.code.length) {
+            this.code = Arrays.copyOf(this.code, this.count * 2);
+            this.lines = Arrays.copyOf(this.lines, this.count * 2);
+        }
+
+        this.code[this.count] = (byte) b;
+        this.lines[this.count] = line;
+        this.count++;
+    }
+
+    int addConstant(Object value) {
+        Integer index = this.constantIndex.get(value);
+        if (index != null) return index;
+
+        if (this.constantCount == this.constants.length) {
+            this.constants = Arrays.copyOf(this.constants, this.constantCount * 2);
+        }
+
+        this.constants[this.constantCount] = value;
+        this.constantIndex.put(value, this.constantCount);
+        return this.constantCount++;
+    }
+}
@@ -0,0 +1,676 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Eval>, Stmt.Visitor {
+    @FunctionalInterface
+    interface Eval {
+        Object evaluate(Environment environment);
+    }
+
+    // Returns NORMAL, or the value of a "return" that ends the function.
+    @FunctionalInterface
+    interface Exec {
+        Object execute(Environment environment);
+    }
+
+    static final Object NORMAL = new Object();
+
+    private final Interpreter interpreter;
+    private final Globals globals;
+
+    // Number of runtime environments enclosing the code being compiled.
+    private int scopeDepth = 0;
+    private Exec exec;
+
+    ClosureCompiler(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.globals = interpreter.globals;
+    }
+
+    Exec compile(List<Stmt> statements) {
+        Exec[] body = this.compileAll(statements);
+        return (Environment environment) -> {
+            for (Exec exec : body) {
+                exec.execute(environment);
+            }
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public void visitBlockStmt(Stmt.Block stmt) {
+        int frameSize = stmt.frameSize;
+        this.scopeDepth++;
+        Exec[] body = this.compileAll(stmt.statements);
+        this.scopeDepth--;
+
+        this.exec = (Environment environment) -> {
+            Environment inner = new Environment(environment, frameSize);
+            for (Exec exec : body) {
+                Object result = exec.execute(inner);
+                if (result != NORMAL) return result;
+            }
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public void visitClassStmt(Stmt.Class stmt) {
+        Token name = stmt.name;
+        Define define = this.define(stmt.name, stmt.slot);
+
+        Eval superclassEval = null;
+        Token superclassName = null;
+        if (stmt.superclass != null) {
+            superclassEval = this.compile(stmt.superclass);
+            superclassName = stmt.superclass.name;
+            this.scopeDepth++;
+        }
+
+        List<Stmt.Function> declarations = stmt.methods;
+        Exec[] bodies = new Exec[declarations.size()];
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = this.function(declarations.get(i));
+        }
+
+        if (stmt.superclass != null) this.scopeDepth--;
+
+        Eval superclassNode = superclassEval;
+        Token superclassToken = superclassName;
+        this.exec = (Environment environment) -> {
+            Object superclass = null;
+            if (superclassNode != null) {
+                superclass = superclassNode.evaluate(environment);
+                if (!(superclass instanceof LoxClass)) {
+                    throw new RuntimeError(
+                            superclassToken, "Superclass must be a class."
+                    );
+                }
+            }
+
+            define.apply(environment, null);
+
+            Environment closure = environment;
+            if (superclass != null) {
+                closure = new Environment(environment, 1);
+                closure.define(0, superclass);
+            }
+
+            Map<Symbol, LoxFunction> methods = new HashMap<>();
+            for (int i = 0; i < bodies.length; i++) {
+                Stmt.Function method = declarations.get(i);
+                methods.put(method.name.symbol(), new CompiledFunction(
+                        method, bodies[i], closure, method.name.symbol() == Symbol.INIT
+                ));
+            }
+
+            define.apply(environment, new LoxClass(
+                    name.lexeme(), (LoxClass) superclass, methods
+            ));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public void visitExpressionStmt(Stmt.Expression stmt) {
+        Eval expression = this.compile(stmt.expression);
+        this.exec = (Environment environment) -> {
+            expression.evaluate(environment);
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public void visitFunctionStmt(Stmt.Function stmt) {
+        Define define = this.define(stmt.name, stmt.slot);
+        Exec body = this.function(stmt);
+        this.exec = (Environment environment) -> {
+            define.apply(environment, new CompiledFunction(stmt, body, environment, false));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public void visitIfStmt(Stmt.If stmt) {
+        Eval condition = this.compile(stmt.condition);
+        Exec thenBranch = this.compile(stmt.thenBranch);
+        if (stmt.elseBranch == null) {
+            this.exec = (Environment environment) -> {
+                if (Interpreter.isTruthy(condition.evaluate(environment))) {
+                    return thenBranch.execute(environment);
+                }
+                return NORMAL;
+            };
+            return;
+        }
+
+        Exec elseBranch = this.compile(stmt.elseBranch);
+        this.exec = (Environment environment) -> {
+            if (Interpreter.isTruthy(condition.evaluate(environment))) {
+                return thenBranch.execute(environment);
+            }
+            return elseBranch.execute(environment);
+        };
+    }
+
+    @Override
+    public void visitPrintStmt(Stmt.Print stmt) {
+        Eval expression = this.compile(stmt.expression);
+        this.exec = (Environment environment) -> {
+            System.out.println(Interpreter.stringify(expression.evaluate(environment)));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) {
+            this.exec = (Environment environment) -> null;
+            return;
+        }
+
+        Eval value = this.compile(stmt.value);
+        this.exec = value::evaluate;
+    }
+
+    @Override
+    public void visitVarStmt(Stmt.Var stmt) {
+        Define define = this.define(stmt.name, stmt.slot);
+        if (stmt.initializer == null) {
+            this.exec = (Environment environment) -> {
+                define.apply(environment, null);
+                return NORMAL;
+            };
+            return;
+        }
+
+        Eval initializer = this.compile(stmt.initializer);
+        this.exec = (Environment environment) -> {
+            define.apply(environment, initializer.evaluate(environment));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public void visitWhileStmt(Stmt.While stmt) {
+        Eval condition = this.compile(stmt.condition);
+        Exec body = this.compile(stmt.body);
+        this.exec = (Environment environment) -> {
+            while (Interpreter.isTruthy(condition.evaluate(environment))) {
+                Object result = body.execute(environment);
+                if (result != NORMAL) return result;
+            }
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Eval visitAssignExpr(Expr.Assign expr) {
+        Eval value = this.compile(expr.value);
+        int depth = expr.depth;
+        int slot = expr.slot;
+
+        if (depth == 0) {
+            return (Environment environment) -> {
+                Object result = value.evaluate(environment);
+                environment.define(slot, result);
+                return result;
+            };
+        } else if (depth > 0) {
+            return (Environment environment) -> {
+                Object result = value.evaluate(environment);
+                environment.assignAt(depth, slot, result);
+                return result;
+            };
+        }
+
+        Token name = expr.name;
+        Symbol symbol = name.symbol();
+        return (Environment environment) -> {
+            Object result = value.evaluate(environment);
+            if (!this.globals.assign(symbol, result)) {
+                throw new RuntimeError(
+                        name, "Undefined variable '" + name.lexeme() + "'."
+                );
+            }
+            return result;
+        };
+    }
+
+    @Override
+    public Eval visitBinaryExpr(Expr.Binary expr) {
+        Token operator = expr.operator;
+
+        return switch (operator.type()) {
+            case BANG_EQUAL -> {
+                Eval left = this.compile(expr.left);
+                Eval right = this.compile(expr.right);
+                yield (Environment environment) ->
+                        !Interpreter.isEqual(left.evaluate(environment), right.evaluate(environment));
+            }
+            case EQUAL_EQUAL -> {
+                Eval left = this.compile(expr.left);
+                Eval right = this.compile(expr.right);
+                yield (Environment environment) ->
+                        Interpreter.isEqual(left.evaluate(environment), right.evaluate(environment));
+            }
+            case MINUS, PLUS, SLASH, STAR, MORE, MORE_EQUAL, LESS, LESS_EQUAL -> this.numeric(expr);
+            // Unreachable.
+            default -> (Environment environment) -> null;
+        };
+    }
+
+    // Each operator gets a lambda of its own, picked here, so the JIT profiles
+    // and inlines each one separately. Anything but two numbers goes to fallback.
+    private Eval numeric(Expr.Binary expr) {
+        Token operator = expr.operator;
+        Eval left = this.compile(expr.left);
+        Eval right = this.compile(expr.right);
+        return switch (operator.type()) {
+            case MINUS -> (Environment environment) -> {
+                Object l = left.evaluate(environment);
+                Object r = right.evaluate(environment);
+                if (l instanceof Double a && r instanceof Double b) return a - b;
+                return this.fallback(operator, l, r);
+            };
+            case PLUS -> (Environment environment) -> {
+                Object l = left.evaluate(environment);
+                Object r = right.evaluate(environment);
+                if (l instanceof Double a && r instanceof Double b) return a + b;
+                return this.fallback(operator, l, r);
+            };
+            case SLASH -> (Environment environment) -> {
+                Object l = left.evaluate(environment);
+                Object r = right.evaluate(environment);
+                if (l instanceof Double a && r instanceof Double b) return a / b;
+                return this.fallback(operator, l, r);
+            };
+            case STAR -> (Environment environment) -> {
+                Object l = left.evaluate(environment);
+                Object r = right.evaluate(environment);
+                if (l instanceof Double a && r instanceof Double b) return a * b;
+                return this.fallback(operator, l, r);
+            };
+            case MORE -> (Environment environment) -> {
+                Object l = left.evaluate(environment);
+                Object r = right.evaluate(environment);
+                if (l instanceof Double a && r instanceof Double b) return a > b;
+                return this.fallback(operator, l, r);
+            };
+            case MORE_EQUAL -> (Environment environment) -> {
+                Object l = left.evaluate(environment);
+                Object r = right.evaluate(environment);
+                if (l instanceof Double a && r instanceof Double b) return a >= b;
+                return this.fallback(operator, l, r);
+            };
+            case LESS -> (Environment environment) -> {
+                Object l = left.evaluate(environment);
+                Object r = right.evaluate(environment);
+                if (l instanceof Double a && r instanceof Double b) return a < b;
+                return this.fallback(operator, l, r);
+            };
+            default -> (Environment environment) -> {
+                Object l = left.evaluate(environment);
+                Object r = right.evaluate(environment);
+                if (l instanceof Double a && r instanceof Double b) return a <= b;
+                return this.fallback(operator, l, r);
+            };
+        };
+    }
+
+    // Adds strings, or reports operands that are not numbers.
+    private Object fallback(Token operator, Object left, Object right) {
+        if (operator.type() == Token.TokenType.PLUS) {
+            if (left instanceof Double a && right instanceof Double b) return a + b;
+            if (left instanceof String a && right instanceof String b) return a + b;
+            throw new RuntimeError(
+                    operator, "Operands must be two numbers or two strings."
+            );
+        }
+
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    @Override
+    public Eval visitCallExpr(Expr.Call expr) {
+        Eval[] arguments = new Eval[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = this.compile(expr.arguments.get(i));
+        }
+
+        if (expr.callee instanceof Expr.Get get) {
+            return this.compileInvoke(expr.paren, this.compile(get.object), get.name, get.cache, arguments);
+        }
+        return this.compileCall(expr.paren, this.compile(expr.callee), arguments);
+    }
+
+    // Picks the entry point for the argument count once, when the call is compiled.
+    private Eval compileCall(Token paren, Eval callee, Eval[] arguments) {
+        return switch (arguments.length) {
+            case 0 -> (Environment environment) -> {
+                Object function = callee.evaluate(environment);
+                return Interpreter.callable(paren, function, 0).call0(this.interpreter);
+            };
+            case 1 -> {
+                Eval e0 = arguments[0];
+                yield (Environment environment) -> {
+                    Object function = callee.evaluate(environment);
+                    Object a0 = e0.evaluate(environment);
+                    return Interpreter.callable(paren, function, 1).call1(this.interpreter, a0);
+                };
+            }
+            case 2 -> {
+                Eval e0 = arguments[0];
+                Eval e1 = arguments[1];
+                yield (Environment environment) -> {
+                    Object function = callee.evaluate(environment);
+                    Object a0 = e0.evaluate(environment);
+                    Object a1 = e1.evaluate(environment);
+                    return Interpreter.callable(paren, function, 2).call2(this.interpreter, a0, a1);
+                };
+            }
+            case 3 -> {
+                Eval e0 = arguments[0];
+                Eval e1 = arguments[1];
+                Eval e2 = arguments[2];
+                yield (Environment environment) -> {
+                    Object function = callee.evaluate(environment);
+                    Object a0 = e0.evaluate(environment);
+                    Object a1 = e1.evaluate(environment);
+                    Object a2 = e2.evaluate(environment);
+                    return Interpreter.callable(paren, function, 3).call3(this.interpreter, a0, a1, a2);
+                };
+            }
+            default -> (Environment environment) -> {
+                Object function = callee.evaluate(environment);
+                Object[] values = this.arguments(arguments, environment);
+                return Interpreter.callable(paren, function, values.length).call(this.interpreter, values);
+            };
+        };
+    }
+
+    private Eval compileInvoke(Token paren, Eval object, Token name, PropertyCache cache, Eval[] arguments) {
+        return switch (arguments.length) {
+            case 0 -> (Environment environment) -> {
+                LoxInstance instance = this.instance(object, name, environment);
+                LoxFunction method = instance.findMethod(name, cache);
+                if (method == null) {
+                    return Interpreter.callable(paren, instance.get(name, cache), 0).call0(this.interpreter);
+                }
+
+                Interpreter.checkArity(paren, method, 0);
+                return method.invoke0(this.interpreter, instance);
+            };
+            case 1 -> {
+                Eval e0 = arguments[0];
+                yield (Environment environment) -> {
+                    LoxInstance instance = this.instance(object, name, environment);
+                    LoxFunction method = instance.findMethod(name, cache);
+                    Object field = method == null ? instance.get(name, cache) : null;
+                    Object a0 = e0.evaluate(environment);
+                    if (method == null) {
+                        return Interpreter.callable(paren, field, 1).call1(this.interpreter, a0);
+                    }
+
+                    Interpreter.checkArity(paren, method, 1);
+                    return method.invoke1(this.interpreter, instance, a0);
+                };
+            }
+            case 2 -> {
+                Eval e0 = arguments[0];
+                Eval e1 = arguments[1];
+                yield (Environment environment) -> {
+                    LoxInstance instance = this.instance(object, name, environment);
+                    LoxFunction method = instance.findMethod(name, cache);
+                    Object field = method == null ? instance.get(name, cache) : null;
+                    Object a0 = e0.evaluate(environment);
+                    Object a1 = e1.evaluate(environment);
+                    if (method == null) {
+                        return Interpreter.callable(paren, field, 2).call2(this.interpreter, a0, a1);
+                    }
+
+                    Interpreter.checkArity(paren, method, 2);
+                    return method.invoke2(this.interpreter, instance, a0, a1);
+                };
+            }
+            case 3 -> {
+                Eval e0 = arguments[0];
+                Eval e1 = arguments[1];
+                Eval e2 = arguments[2];
+                yield (Environment environment) -> {
+                    LoxInstance instance = this.instance(object, name, environment);
+                    LoxFunction method = instance.findMethod(name, cache);
+                    Object field = method == null ? instance.get(name, cache) : null;
+                    Object a0 = e0.evaluate(environment);
+                    Object a1 = e1.evaluate(environment);
+                    Object a2 = e2.evaluate(environment);
+                    if (method == null) {
+                        return Interpreter.callable(paren, field, 3).call3(this.interpreter, a0, a1, a2);
+                    }
+
+                    Interpreter.checkArity(paren, method, 3);
+                    return method.invoke3(this.interpreter, instance, a0, a1, a2);
+                };
+            }
+            default -> (Environment environment) -> {
+                LoxInstance instance = this.instance(object, name, environment);
+                LoxFunction method = instance.findMethod(name, cache);
+                Object field = method == null ? instance.get(name, cache) : null;
+                Object[] values = this.arguments(arguments, environment);
+                if (method == null) {
+                    return Interpreter.callable(paren, field, values.length).call(this.interpreter, values);
+                }
+
+                Interpreter.checkArity(paren, method, values.length);
+                return method.invoke(this.interpreter, instance, values);
+            };
+        };
+    }
+
+    private LoxInstance instance(Eval object, Token name, Environment environment) {
+        if (!(object.evaluate(environment) instanceof LoxInstance instance)) {
+            throw new RuntimeError(
+                    name, "Only instances have properties."
+            );
+        }
+        return instance;
+    }
+
+    private Object[] arguments(Eval[] arguments, Environment environment) {
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = arguments[i].evaluate(environment);
+        }
+        return values;
+    }
+
+    @Override
+    public Eval visitGetExpr(Expr.Get expr) {
+        Eval object = this.compile(expr.object);
+        Token name = expr.name;
+        PropertyCache cache = expr.cache;
+
+        return (Environment environment) -> {
+            if (object.evaluate(environment) instanceof LoxInstance instance) {
+                return instance.get(name, cache);
+            }
+
+            throw new RuntimeError(
+                    name, "Only instances have properties."
+            );
+        };
+    }
+
+    @Override
+    public Eval visitGroupingExpr(Expr.Grouping expr) {
+        return this.compile(expr.expression);
+    }
+
+    @Override
+    public Eval visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        return (Environment environment) -> value;
+    }
+
+    @Override
+    public Eval visitLogicalExpr(Expr.Logical expr) {
+        Eval left = this.compile(expr.left);
+        Eval right = this.compile(expr.right);
+
+        if (expr.operator.type() == Token.TokenType.OR) {
+            return (Environment environment) -> {
+                Object value = left.evaluate(environment);
+                if (Interpreter.isTruthy(value)) return value;
+                return right.evaluate(environment);
+            };
+        }
+
+        return (Environment environment) -> {
+            Object value = left.evaluate(environment);
+            if (!Interpreter.isTruthy(value)) return value;
+            return right.evaluate(environment);
+        };
+    }
+
+    @Override
+    public Eval visitSetExpr(Expr.Set expr) {
+        Eval object = this.compile(expr.object);
+        Eval value = this.compile(expr.value);
+        Token name = expr.name;
+        PropertyCache cache = expr.cache;
+
+        return (Environment environment) -> {
+            if (!(object.evaluate(environment) instanceof LoxInstance instance)) {
+                throw new RuntimeError(
+                        name, "Only instances have fields."
+                );
+            }
+
+            Object result = value.evaluate(environment);
+            instance.set(name, result, cache);
+            return result;
+        };
+    }
+
+    @Override
+    public Eval visitSuperExpr(Expr.Super expr) {
+        int distance = expr.depth;
+        Token method = expr.method;
+
+        return (Environment environment) -> {
+            LoxClass superclass = (LoxClass) environment.getAt(distance, 0);
+            LoxInstance object = (LoxInstance) environment.getAt(distance - 1, 0);
+
+            LoxFunction function = superclass.findMethod(expr);
+            if (function == null) {
+                throw new RuntimeError(
+                        method,
+                        "Undefined property '" + method.lexeme() + "'."
+                );
+            }
+
+            return function.bind(object);
+        };
+    }
+
+    @Override
+    public Eval visitThisExpr(Expr.This expr) {
+        return this.variable(expr.keyword, expr.depth, expr.slot);
+    }
+
+    @Override
+    public Eval visitUnaryExpr(Expr.Unary expr) {
+        return switch (expr.operator.type()) {
+            case BANG -> {
+                Eval right = this.compile(expr.right);
+                yield (Environment environment) -> !Interpreter.isTruthy(right.evaluate(environment));
+            }
+            case MINUS -> {
+                Eval right = this.compile(expr.right);
+                Token operator = expr.operator;
+                yield (Environment environment) -> {
+                    if (right.evaluate(environment) instanceof Double r) return -r;
+                    throw new RuntimeError(operator, "Operand must be a number.");
+                };
+            }
+            // Unreachable.
+            default -> (Environment environment) -> null;
+        };
+    }
+
+    @Override
+    public Eval visitVariableExpr(Expr.Variable expr) {
+        return this.variable(expr.name, expr.depth, expr.slot);
+    }
+
+    private Eval compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Exec compile(Stmt stmt) {
+        stmt.accept(this);
+        return this.exec;
+    }
+
+    private Exec[] compileAll(List<Stmt> statements) {
+        Exec[] execs = new Exec[statements.size()];
+        for (int i = 0; i < execs.length; i++) {
+            execs[i] = this.compile(statements.get(i));
+        }
+        return execs;
+    }
+
+    private Exec function(Stmt.Function stmt) {
+        this.scopeDepth++;
+        Exec[] body = this.compileAll(stmt.body);
+        this.scopeDepth--;
+
+        return (Environment environment) -> {
+            for (Exec exec : body) {
+                Object result = exec.execute(environment);
+                if (result != NORMAL) return result;
+            }
+            return NORMAL;
+        };
+    }
+
+    private Eval variable(Token name, int depth, int slot) {
+        if (depth == 0) {
+            return (Environment environment) -> environment.get(slot);
+        } else if (depth == 1) {
+            return (Environment environment) -> environment.enclosing.get(slot);
+        } else if (depth > 1) {
+            return (Environment environment) -> environment.getAt(depth, slot);
+        }
+
+        Symbol symbol = name.symbol();
+        return (Environment environment) -> {
+            Object value = this.globals.get(symbol);
+            if (value == Globals.UNDEFINED) {
+                throw new RuntimeError(
+                        name, "Undefined variable '" + name.lexeme() + "'."
+                );
+            }
+            return value;
+        };
+    }
+
+    @FunctionalInterface
+    private interface Define {
+        void apply(Environment environment, Object value);
+    }
+
+    private Define define(Token name, int slot) {
+        if (this.scopeDepth == 0) {
+            Symbol symbol = name.symbol();
+            return (Environment environment, Object value) ->
+                    this.globals.define(symbol, value);
+        }
+
+        return (Environment environment, Object value) ->
+                environment.define(slot, value);
+    }
+}
@@ -0,0 +1,27 @@
+package com.craftinginterpreters.lox;
+
+class CompiledFunction extends LoxFunction {
+    private final ClosureCompiler.Exec body;
+
+    CompiledFunction(Stmt.Function declaration, ClosureCompiler.Exec body, Environment closure, boolean isInitializer) {
+        this(declaration, body, closure, isInitializer, null);
+    }
+
+    private CompiledFunction(Stmt.Function declaration, ClosureCompiler.Exec body, Environment closure, boolean isInitializer, LoxInstance receiver) {
+        super(declaration, closure, isInitializer, receiver);
+        this.body = body;
+    }
+
+    @Override
+    LoxFunction bind(LoxInstance instance) {
+        return new CompiledFunction(this.declaration, this.body, this.closure, this.isInitializer, instance);
+    }
+
+    @Override
+    Object execute(Interpreter interpreter, LoxInstance receiver, Environment environment) {
+        Object result = this.body.execute(environment);
+
+        if (this.isInitializer) return receiver;
+        return result == ClosureCompiler.NORMAL ? null : result;
+    }
+}
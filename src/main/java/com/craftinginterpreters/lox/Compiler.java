@@ -0,0 +1,533 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor {
+    private enum FunctionType {
+        SCRIPT, FUNCTION, METHOD, INITIALIZER
+    }
+
+    // A local's index in the list is its stack slot.
+    private static final class Local {
+        Local(Symbol name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+
+        final Symbol name;
+        final int depth;
+        boolean isCaptured = false;
+    }
+
+    private record Upvalue(boolean isLocal, int index) {}
+
+    private static class State {
+        final State enclosing;
+        final Obj.Function function;
+        final FunctionType type;
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+
+        State(State enclosing, Obj.Function function, FunctionType type) {
+            this.enclosing = enclosing;
+            this.function = function;
+            this.type = type;
+
+            // Slot 0 holds the callee, or the receiver in a method.
+            boolean isMethod = type == FunctionType.METHOD || type == FunctionType.INITIALIZER;
+            this.locals.add(new Local(isMethod ? Symbol.THIS : null, 0));
+        }
+    }
+
+    private State current = null;
+    private int line = 0;
+
+    Obj.Function compile(List<Stmt> statements) {
+        this.current = new State(null, new Obj.Function(null, 0), FunctionType.SCRIPT);
+        for (Stmt statement : statements) {
+            this.compile(statement);
+        }
+        this.emitReturn();
+
+        return this.current.function;
+    }
+
+    @Override
+    public void visitBlockStmt(Stmt.Block stmt) {
+        this.beginScope();
+        for (Stmt statement : stmt.statements) {
+            this.compile(statement);
+        }
+        this.endScope();
+    }
+
+    @Override
+    public void visitClassStmt(Stmt.Class stmt) {
+        this.line = stmt.name.line();
+        int name = this.constant(stmt.name.symbol());
+
+        this.emit(OpCode.CLASS);
+        this.emitShort(name);
+        this.define(stmt.name);
+
+        if (stmt.superclass != null) {
+            this.compile(stmt.superclass);
+
+            // The superclass stays on the stack as the local "super".
+            this.beginScope();
+            this.addLocal(Symbol.SUPER);
+
+            this.line = stmt.superclass.name.line();
+            this.variable(OpCode.GET_LOCAL, stmt.name.symbol());
+            this.emit(OpCode.INHERIT);
+        }
+
+        // The class is on the stack while its methods are added.
+        this.line = stmt.name.line();
+        this.variable(OpCode.GET_LOCAL, stmt.name.symbol());
+        for (Stmt.Function method : stmt.methods) {
+            boolean isInitializer = method.name.symbol() == Symbol.INIT;
+            this.function(method, isInitializer ? FunctionType.INITIALIZER : FunctionType.METHOD);
+            this.emit(OpCode.METHOD);
+            this.emitShort(this.constant(method.name.symbol()));
+        }
+        this.emit(OpCode.POP);
+
+        if (stmt.superclass != null) this.endScope();
+    }
+
+    @Override
+    public void visitExpressionStmt(Stmt.Expression stmt) {
+        this.compile(stmt.expression);
+        this.emit(OpCode.POP);
+    }
+
+    @Override
+    public void visitFunctionStmt(Stmt.Function stmt) {
+        // A local function is in scope in its own body, so it can recurse.
+        if (this.current.scopeDepth > 0) this.addLocal(stmt.name.symbol());
+        this.function(stmt, FunctionType.FUNCTION);
+        if (this.current.scopeDepth == 0) this.define(stmt.name);
+    }
+
+    @Override
+    public void visitIfStmt(Stmt.If stmt) {
+        this.compile(stmt.condition);
+
+        int thenJump = this.emitJump(OpCode.JUMP_IF_FALSE);
+        this.emit(OpCode.POP);
+        this.compile(stmt.thenBranch);
+
+        int elseJump = this.emitJump(OpCode.JUMP);
+        this.patchJump(thenJump);
+        this.emit(OpCode.POP);
+        if (stmt.elseBranch != null) this.compile(stmt.elseBranch);
+        this.patchJump(elseJump);
+    }
+
+    @Override
+    public void visitPrintStmt(Stmt.Print stmt) {
+        this.compile(stmt.expression);
+        this.emit(OpCode.PRINT);
+    }
+
+    @Override
+    public void visitReturnStmt(Stmt.Return stmt) {
+        this.line = stmt.keyword.line();
+        if (stmt.value == null) {
+            this.emitReturn();
+        } else {
+            this.compile(stmt.value);
+            this.emit(OpCode.RETURN);
+        }
+    }
+
+    @Override
+    public void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            this.compile(stmt.initializer);
+        } else {
+            this.emit(OpCode.NIL);
+        }
+
+        this.line = stmt.name.line();
+        this.define(stmt.name);
+    }
+
+    @Override
+    public void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = this.chunk().count;
+        this.compile(stmt.condition);
+
+        int exitJump = this.emitJump(OpCode.JUMP_IF_FALSE);
+        this.emit(OpCode.POP);
+        this.compile(stmt.body);
+        this.emitLoop(loopStart);
+
+        this.patchJump(exitJump);
+        this.emit(OpCode.POP);
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        this.compile(expr.value);
+
+        this.line = expr.name.line();
+        this.variable(OpCode.SET_LOCAL, expr.name.symbol());
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        this.compile(expr.left);
+        this.compile(expr.right);
+
+        this.line = expr.operator.line();
+        switch (expr.operator.type()) {
+            case BANG_EQUAL -> this.emit(OpCode.NOT_EQUAL);
+            case EQUAL_EQUAL -> this.emit(OpCode.EQUAL);
+            case MORE -> this.emit(OpCode.GREATER);
+            case MORE_EQUAL -> this.emit(OpCode.GREATER_EQUAL);
+            case LESS -> this.emit(OpCode.LESS);
+            case LESS_EQUAL -> this.emit(OpCode.LESS_EQUAL);
+            case MINUS -> this.emit(OpCode.SUBTRACT);
+            case PLUS -> this.emit(OpCode.ADD);
+            case SLASH -> this.emit(OpCode.DIVIDE);
+            case STAR -> this.emit(OpCode.MULTIPLY);
+            // Unreachable.
+            default -> {}
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get get) {
+            // Invoke the method directly instead of creating a bound method.
+            this.compile(get.object);
+            for (Expr argument : expr.arguments) {
+                this.compile(argument);
+            }
+
+            this.line = expr.paren.line();
+            this.emit(OpCode.INVOKE);
+            this.emitShort(this.constant(get.name.symbol()));
+            this.emit(expr.arguments.size());
+            return null;
+        }
+
+        if (expr.callee instanceof Expr.Super superExpr) {
+            // Look the method up on the superclass and call it on "this".
+            this.line = superExpr.keyword.line();
+            this.variable(OpCode.GET_LOCAL, Symbol.THIS);
+            for (Expr argument : expr.arguments) {
+                this.compile(argument);
+            }
+            this.line = superExpr.keyword.line();
+            this.variable(OpCode.GET_LOCAL, Symbol.SUPER);
+
+            this.line = expr.paren.line();
+            this.emit(OpCode.SUPER_INVOKE);
+            this.emitShort(this.constant(superExpr.method.symbol()));
+            this.emit(expr.arguments.size());
+            return null;
+        }
+
+        this.compile(expr.callee);
+        for (Expr argument : expr.arguments) {
+            this.compile(argument);
+        }
+
+        this.line = expr.paren.line();
+        this.emit(OpCode.CALL);
+        this.emit(expr.arguments.size());
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        this.compile(expr.object);
+
+        this.line = expr.name.line();
+        this.emit(OpCode.GET_PROPERTY);
+        this.emitShort(this.constant(expr.name.symbol()));
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        this.compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            this.emit(OpCode.NIL);
+        } else if (expr.value instanceof Boolean value) {
+            this.emit(value ? OpCode.TRUE : OpCode.FALSE);
+        } else {
+            this.emit(OpCode.CONSTANT);
+            this.emitShort(this.constant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        this.compile(expr.left);
+
+        if (expr.operator.type() == Token.TokenType.OR) {
+            int elseJump = this.emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = this.emitJump(OpCode.JUMP);
+
+            this.patchJump(elseJump);
+            this.emit(OpCode.POP);
+            this.compile(expr.right);
+            this.patchJump(endJump);
+        } else {
+            int endJump = this.emitJump(OpCode.JUMP_IF_FALSE);
+            this.emit(OpCode.POP);
+            this.compile(expr.right);
+            this.patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        this.compile(expr.object);
+        this.compile(expr.value);
+
+        this.line = expr.name.line();
+        this.emit(OpCode.SET_PROPERTY);
+        this.emitShort(this.constant(expr.name.symbol()));
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        this.line = expr.keyword.line();
+        this.variable(OpCode.GET_LOCAL, Symbol.THIS);
+        this.variable(OpCode.GET_LOCAL, Symbol.SUPER);
+
+        this.line = expr.method.line();
+        this.emit(OpCode.GET_SUPER);
+        this.emitShort(this.constant(expr.method.symbol()));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        this.line = expr.keyword.line();
+        this.variable(OpCode.GET_LOCAL, Symbol.THIS);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        this.compile(expr.right);
+
+        this.line = expr.operator.line();
+        switch (expr.operator.type()) {
+            case BANG -> this.emit(OpCode.NOT);
+            case MINUS -> this.emit(OpCode.NEGATE);
+            // Unreachable.
+            default -> {}
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        this.line = expr.name.line();
+        this.variable(OpCode.GET_LOCAL, expr.name.symbol());
+        return null;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void function(Stmt.Function stmt, FunctionType type) {
+        this.line = stmt.name.line();
+        Obj.Function function = new Obj.Function(
+                stmt.name.lexeme(), stmt.params.size()
+        );
+
+        this.current = new State(this.current, function, type);
+        this.beginScope();
+        for (Token param : stmt.params) {
+            this.addLocal(param.symbol());
+        }
+        for (Stmt statement : stmt.body) {
+            this.compile(statement);
+        }
+        // The return discards the whole frame, so the scope is not ended.
+        this.emitReturn();
+        State state = this.current;
+        this.current = state.enclosing;
+        function.upvalueCount = state.upvalues.size();
+
+        this.emit(OpCode.CLOSURE);
+        this.emitShort(this.constant(function));
+        for (Upvalue upvalue : state.upvalues) {
+            this.emit(upvalue.isLocal() ? 1 : 0);
+            this.emitShort(upvalue.index());
+        }
+    }
+
+    // Emits a get or a set of a local, an upvalue or a global, whichever the
+    // name refers to.
+    private void variable(byte localOp, Symbol name) {
+        boolean isGet = localOp == OpCode.GET_LOCAL;
+
+        int arg = this.resolveLocal(this.current, name);
+        if (arg >= 0) {
+            this.emit(localOp);
+        } else if ((arg = this.resolveUpvalue(this.current, name)) >= 0) {
+            this.emit(isGet ? OpCode.GET_UPVALUE : OpCode.SET_UPVALUE);
+        } else {
+            arg = this.constant(name);
+            this.emit(isGet ? OpCode.GET_GLOBAL : OpCode.SET_GLOBAL);
+        }
+        this.emitShort(arg);
+    }
+
+    private int resolveLocal(State state, Symbol name) {
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            if (state.locals.get(i).name == name) return i;
+        }
+        return -1;
+    }
+
+    private int resolveUpvalue(State state, Symbol name) {
+        if (state.enclosing == null) return -1;
+
+        int local = this.resolveLocal(state.enclosing, name);
+        if (local >= 0) {
+            state.enclosing.locals.get(local).isCaptured = true;
+            return this.addUpvalue(state, true, local);
+        }
+
+        int upvalue = this.resolveUpvalue(state.enclosing, name);
+        if (upvalue >= 0) return this.addUpvalue(state, false, upvalue);
+
+        return -1;
+    }
+
+    private int addUpvalue(State state, boolean isLocal, int index) {
+        Upvalue upvalue = new Upvalue(isLocal, index);
+        int existing = state.upvalues.indexOf(upvalue);
+        if (existing >= 0) return existing;
+
+        if (state.upvalues.size() > 0xffff) {
+            Lox.error(this.line, "Too many closure variables in function.");
+            return 0;
+        }
+
+        state.upvalues.add(upvalue);
+        return state.upvalues.size() - 1;
+    }
+
+    // The value is on top of the stack: a local stays there, a global is popped
+    // into the globals table.
+    private void define(Token name) {
+        if (this.current.scopeDepth > 0) {
+            this.addLocal(name.symbol());
+        } else {
+            this.emit(OpCode.DEFINE_GLOBAL);
+            this.emitShort(this.constant(name.symbol()));
+        }
+    }
+
+    private void addLocal(Symbol name) {
+        if (this.current.locals.size() > 0xffff) {
+            Lox.error(this.line, "Too many local variables in function.");
+            return;
+        }
+
+        this.current.locals.add(new Local(name, this.current.scopeDepth));
+    }
+
+    private void beginScope() {
+        this.current.scopeDepth++;
+    }
+
+    private void endScope() {
+        this.current.scopeDepth--;
+
+        List<Local> locals = this.current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > this.current.scopeDepth) {
+            Local local = locals.remove(locals.size() - 1);
+            this.emit(local.isCaptured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+        }
+    }
+
+    private Chunk chunk() {
+        return this.current.function.chunk;
+    }
+
+    private int constant(Object value) {
+        int constant = this.chunk().addConstant(value);
+        if (constant > 0xffff) {
+            Lox.error(this.line, "Too many constants in one chunk.");
+            return 0;
+        }
+
+        return constant;
+    }
+
+    private void emit(int b) {
+        this.chunk().write(b, this.line);
+    }
+
+    private void emitShort(int s) {
+        this.emit((s >> 8) & 0xff);
+        this.emit(s & 0xff);
+    }
+
+    private void emitReturn() {
+        if (this.current.type == FunctionType.INITIALIZER) {
+            // An initializer always returns "this", in slot 0.
+            this.emit(OpCode.GET_LOCAL);
+            this.emitShort(0);
+        } else {
+            this.emit(OpCode.NIL);
+        }
+
+        this.emit(OpCode.RETURN);
+    }
+
+    private int emitJump(byte op) {
+        this.emit(op);
+        this.emitShort(0xffff);
+        return this.chunk().count - 2;
+    }
+
+    private void patchJump(int offset) {
+        // -2 to adjust for the bytecode for the jump offset itself.
+        int jump = this.chunk().count - offset - 2;
+        if (jump > 0xffff) {
+            Lox.error(this.line, "Too much code to jump over.");
+        }
+
+        this.chunk().code[offset] = (byte) ((jump >> 8) & 0xff);
+        this.chunk().code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        this.emit(OpCode.LOOP);
+
+        int offset = this.chunk().count - loopStart + 2;
+        if (offset > 0xffff) Lox.error(this.line, "Loop body too large.");
+
+        this.emitShort(offset);
+    }
+}
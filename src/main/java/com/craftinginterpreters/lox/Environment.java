@@ -2,51 +2,21 @@ package com.craftinginterpreters.lox;
 
 import com.craftinginterpreters.util.Objects;
 
-import java.util.HashMap;
-import java.util.Map;
-
 class Environment {
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
-
-    Environment() {
-        enclosing = null;
-    }
+    private final Object[] slots;
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        this.slots = new Object[size];
     }
 
-    Object get(Token name) {
-        if (this.values.containsKey(name.lexeme())) {
-            return this.values.get(name.lexeme());
-        }
-
-        if (this.enclosing != null) return this.enclosing.get(name);
-
-        throw new RuntimeError(
-                name, "Undefined variable '" + name.lexeme() + "'."
-        );
-    }
-
-    void assign(Token name, Object value) {
-        if (this.values.containsKey(name.lexeme())) {
-            this.values.put(name.lexeme(), value);
-            return;
-        }
-
-        if (this.enclosing != null) {
-            this.enclosing.assign(name, value);
-            return;
-        }
-
-        throw new RuntimeError(
-                name, "Undefined variable '" + name.lexeme() + "'."
-        );
+    void define(int slot, Object value) {
+        this.slots[slot] = value;
     }
 
-    void define(String name, Object value) {
-        this.values.put(name, value);
+    Object get(int slot) {
+        return this.slots[slot];
     }
 
     Environment ancestor(int distance) {
@@ -59,11 +29,11 @@ class Environment {
         return environment;
     }
 
-    Object getAt(int distance, String name) {
-        return this.ancestor(distance).values.get(name);
+    Object getAt(int distance, int slot) {
+        return this.ancestor(distance).slots[slot];
     }
 
-    void assignAt(int distance, Token name, Object value) {
-        this.ancestor(distance).values.put(name.lexeme(), value);
+    void assignAt(int distance, int slot, Object value) {
+        this.ancestor(distance).slots[slot] = value;
     }
 }
@@ -30,6 +30,8 @@ abstract class Expr {
 
         final Token name;
         final Expr value;
+        int depth = -1;
+        int slot;
     }
     static class Binary extends Expr {
         Binary(Expr left, Token operator, Expr right) {
@@ -76,6 +78,7 @@ abstract class Expr {
 
         final Expr object;
         final Token name;
+        PropertyCache cache = new PropertyCache();
     }
     static class Grouping extends Expr {
         Grouping(Expr expression) {
@@ -132,6 +135,7 @@ abstract class Expr {
         final Expr object;
         final Token name;
         final Expr value;
+        PropertyCache cache = new PropertyCache();
     }
     static class Super extends Expr {
         Super(Token keyword, Token method) {
@@ -146,6 +150,9 @@ abstract class Expr {
 
         final Token keyword;
         final Token method;
+        int depth;
+        LoxClass cachedClass;
+        LoxFunction cachedMethod;
     }
     static class This extends Expr {
         This(Token keyword) {
@@ -158,6 +165,8 @@ abstract class Expr {
         }
 
         final Token keyword;
+        int depth;
+        int slot;
     }
     static class Unary extends Expr {
         Unary(Token operator, Expr right) {
@@ -184,6 +193,8 @@ abstract class Expr {
         }
 
         final Token name;
+        int depth = -1;
+        int slot;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
@@ -0,0 +1,35 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// Global variables, indexed by symbol id instead of hashed by name.
+final class Globals {
+    // Marks a name that has no global variable.
+    static final Object UNDEFINED = new Object();
+
+    private Object[] values = new Object[0];
+
+    Object get(Symbol name) {
+        if (name.id >= this.values.length) return UNDEFINED;
+        return this.values[name.id];
+    }
+
+    void define(Symbol name, Object value) {
+        if (name.id >= this.values.length) this.grow();
+        this.values[name.id] = value;
+    }
+
+    // Returns false when the variable was never defined.
+    boolean assign(Symbol name, Object value) {
+        if (this.get(name) == UNDEFINED) return false;
+
+        this.values[name.id] = value;
+        return true;
+    }
+
+    private void grow() {
+        int length = this.values.length;
+        this.values = Arrays.copyOf(this.values, Math.max(Symbol.count(), length * 2));
+        Arrays.fill(this.values, length, this.values.length, UNDEFINED);
+    }
+}
@@ -1,24 +1,31 @@
 package com.craftinginterpreters.lox;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
-    final Environment globals = new Environment();
-    private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    final Globals globals = new Globals();
+    private Environment environment = null;
+
+    // Set by a return statement until the enclosing call takes the value.
+    private boolean returning = false;
+    private Object returnValue = null;
 
     Interpreter() {
-        globals.define("clock", new LoxCallable() {
+        globals.define(Symbol.of("clock"), new LoxCallable() {
             @Override
             public int arity() {
                 return 0;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
+            public Object call(Interpreter interpreter, Object[] arguments) {
+                return this.call0(interpreter);
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter) {
                 return (double) System.currentTimeMillis() / 1000.0;
             }
 
@@ -49,6 +56,14 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         }
     }
 
+    void interpret(ClosureCompiler.Exec program) {
+        try {
+            program.execute(this.environment);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
     protected Object evaluate(Expr expr) {
         return expr.accept(this);
     }
@@ -57,10 +72,6 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         stmt.accept(this);
     }
 
-    void resolve(Expr expr, int depth) {
-        this.locals.put(expr, depth);
-    }
-
     void executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
         try {
@@ -68,15 +79,25 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
 
             for (Stmt statement : statements) {
                 this.execute(statement);
+                if (this.returning) break;
             }
         } finally {
             this.environment = previous;
         }
     }
 
+    Object takeReturnValue() {
+        Object value = this.returnValue;
+        this.returning = false;
+        this.returnValue = null;
+        return value;
+    }
+
     @Override
     public void visitBlockStmt(Stmt.Block stmt) {
-        this.executeBlock(stmt.statements, new Environment(this.environment));
+        this.executeBlock(
+                stmt.statements, new Environment(this.environment, stmt.frameSize)
+        );
     }
 
     @Override
@@ -92,18 +113,18 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
             }
         }
 
-        this.environment.define(stmt.name.lexeme(), null);
+        this.define(stmt.name, stmt.slot, null);
         if (stmt.superclass != null) {
-            this.environment = new Environment(this.environment);
-            this.environment.define("super", superclass);
+            this.environment = new Environment(this.environment, 1);
+            this.environment.define(0, superclass);
         }
 
-        Map<String, LoxFunction> methods = new HashMap<>();
+        Map<Symbol, LoxFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods) {
             LoxFunction function = new LoxFunction(
-                    method, environment, method.name.lexeme().equals("init")
+                    method, environment, method.name.symbol() == Symbol.INIT
             );
-            methods.put(method.name.lexeme(), function);
+            methods.put(method.name.symbol(), function);
         }
 
         LoxClass klass = new LoxClass(
@@ -114,7 +135,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
             this.environment = this.environment.enclosing;
         }
 
-        this.environment.assign(stmt.name, klass);
+        this.define(stmt.name, stmt.slot, klass);
     }
 
     @Override
@@ -127,12 +148,12 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         LoxFunction function = new LoxFunction(
                 stmt, this.environment, false
         );
-        this.environment.define(stmt.name.lexeme(), function);
+        this.define(stmt.name, stmt.slot, function);
     }
 
     @Override
     public void visitIfStmt(Stmt.If stmt) {
-        if (this.isTruthy(this.evaluate(stmt.condition))) {
+        if (Interpreter.isTruthy(this.evaluate(stmt.condition))) {
             this.execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
             this.execute(stmt.elseBranch);
@@ -142,7 +163,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
     @Override
     public void visitPrintStmt(Stmt.Print stmt) {
         Object value = this.evaluate(stmt.expression);
-        System.out.println(this.stringify(value));
+        System.out.println(Interpreter.stringify(value));
     }
 
     @Override
@@ -150,7 +171,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         Object value = null;
         if (stmt.value != null) value = this.evaluate(stmt.value);
 
-        throw new Return(value);
+        this.returnValue = value;
+        this.returning = true;
     }
 
     @Override
@@ -160,13 +182,14 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
             value = this.evaluate(stmt.initializer);
         }
 
-        this.environment.define(stmt.name.lexeme(), value);
+        this.define(stmt.name, stmt.slot, value);
     }
 
     @Override
     public void visitWhileStmt(Stmt.While stmt) {
-        while (this.isTruthy(this.evaluate(stmt.condition))) {
+        while (Interpreter.isTruthy(this.evaluate(stmt.condition))) {
             this.execute(stmt.body);
+            if (this.returning) return;
         }
     }
 
@@ -177,11 +200,12 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         this.environment.assign(expr.name, value);
 */
 
-        Integer distance = this.locals.get(expr);
-        if (distance != null) {
-            this.environment.assignAt(distance, expr.name, value);
-        } else {
-            this.globals.assign(expr.name, value);
+        if (expr.depth >= 0) {
+            this.environment.assignAt(expr.depth, expr.slot, value);
+        } else if (!this.globals.assign(expr.name.symbol(), value)) {
+            throw new RuntimeError(
+                    expr.name, "Undefined variable '" + expr.name.lexeme() + "'."
+            );
         }
         return value;
     }
@@ -192,8 +216,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         Object right = this.evaluate(expr.right);
 
         return switch (expr.operator.type()) {
-            case BANG_EQUAL -> !this.isEqual(left, right);
-            case EQUAL_EQUAL -> this.isEqual(left, right);
+            case BANG_EQUAL -> !Interpreter.isEqual(left, right);
+            case EQUAL_EQUAL -> Interpreter.isEqual(left, right);
             case MORE -> this.processNumberOperation(left, expr.operator, right, (l, r) -> l > r);
             case MORE_EQUAL -> this.processNumberOperation(left, expr.operator, right, (l, r) -> l >= r);
             case LESS -> this.processNumberOperation(left, expr.operator, right, (l, r) -> l < r);
@@ -220,34 +244,117 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        Object callee = this.evaluate(expr.callee);
+        if (expr.callee instanceof Expr.Get get) {
+            Object object = this.evaluate(get.object);
+            if (object instanceof LoxInstance instance) {
+                LoxFunction method = instance.findMethod(get.name, get.cache);
+                if (method != null) return this.invoke(expr, instance, method);
+                return this.call(expr, instance.get(get.name, get.cache));
+            }
+
+            throw new RuntimeError(
+                    get.name, "Only instances have properties."
+            );
+        }
+
+        return this.call(expr, this.evaluate(expr.callee));
+    }
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments) {
-            arguments.add(this.evaluate(argument));
+    private Object invoke(Expr.Call expr, LoxInstance receiver, LoxFunction method) {
+        List<Expr> arguments = expr.arguments;
+        switch (arguments.size()) {
+            case 0 -> {
+                Interpreter.checkArity(expr.paren, method, 0);
+                return method.invoke0(this, receiver);
+            }
+            case 1 -> {
+                Object a0 = this.evaluate(arguments.get(0));
+                Interpreter.checkArity(expr.paren, method, 1);
+                return method.invoke1(this, receiver, a0);
+            }
+            case 2 -> {
+                Object a0 = this.evaluate(arguments.get(0));
+                Object a1 = this.evaluate(arguments.get(1));
+                Interpreter.checkArity(expr.paren, method, 2);
+                return method.invoke2(this, receiver, a0, a1);
+            }
+            case 3 -> {
+                Object a0 = this.evaluate(arguments.get(0));
+                Object a1 = this.evaluate(arguments.get(1));
+                Object a2 = this.evaluate(arguments.get(2));
+                Interpreter.checkArity(expr.paren, method, 3);
+                return method.invoke3(this, receiver, a0, a1, a2);
+            }
+            default -> {
+                Object[] values = this.evaluateArguments(arguments);
+                Interpreter.checkArity(expr.paren, method, values.length);
+                return method.invoke(this, receiver, values);
+            }
+        }
+    }
+
+    private Object call(Expr.Call expr, Object callee) {
+        List<Expr> arguments = expr.arguments;
+        switch (arguments.size()) {
+            case 0 -> {
+                return Interpreter.callable(expr.paren, callee, 0).call0(this);
+            }
+            case 1 -> {
+                Object a0 = this.evaluate(arguments.get(0));
+                return Interpreter.callable(expr.paren, callee, 1).call1(this, a0);
+            }
+            case 2 -> {
+                Object a0 = this.evaluate(arguments.get(0));
+                Object a1 = this.evaluate(arguments.get(1));
+                return Interpreter.callable(expr.paren, callee, 2).call2(this, a0, a1);
+            }
+            case 3 -> {
+                Object a0 = this.evaluate(arguments.get(0));
+                Object a1 = this.evaluate(arguments.get(1));
+                Object a2 = this.evaluate(arguments.get(2));
+                return Interpreter.callable(expr.paren, callee, 3).call3(this, a0, a1, a2);
+            }
+            default -> {
+                Object[] values = this.evaluateArguments(arguments);
+                return Interpreter.callable(expr.paren, callee, values.length).call(this, values);
+            }
         }
+    }
+
+    private Object[] evaluateArguments(List<Expr> arguments) {
+        Object[] values = new Object[arguments.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = this.evaluate(arguments.get(i));
+        }
+        return values;
+    }
 
+    static LoxCallable callable(Token paren, Object callee, int argCount) {
         if (!(callee instanceof LoxCallable function)) {
             throw new RuntimeError(
-                    expr.paren, "Can only call function and classes."
+                    paren, "Can only call function and classes."
             );
         }
 
-        if (arguments.size() != function.arity()) {
+        Interpreter.checkArity(paren, function, argCount);
+        return function;
+    }
+
+    static void checkArity(Token paren, LoxCallable function, int argCount) {
+        if (argCount != function.arity()) {
             throw new RuntimeError(
-                    expr.paren,
+                    paren,
                     "Expected " + function.arity()
-                            + " arguments but got " + arguments.size() + "."
+                            + " arguments but got " + argCount + "."
             );
         }
-        return function.call(this, arguments);
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr) {
         Object object = this.evaluate(expr.object);
         if (object instanceof LoxInstance instance) {
-            return instance.get(expr.name);
+            return instance.get(expr.name, expr.cache);
         }
 
         throw new RuntimeError(
@@ -270,9 +377,9 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         Object left = this.evaluate(expr.left);
 
         if (expr.operator.type() == Token.TokenType.OR) {
-            if (this.isTruthy(left)) return left;
+            if (Interpreter.isTruthy(left)) return left;
         } else {
-            if (!this.isTruthy(left)) return left;
+            if (!Interpreter.isTruthy(left)) return left;
         }
 
         return this.evaluate(expr.right);
@@ -289,22 +396,22 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         }
 
         Object value = this.evaluate(expr.value);
-        ((LoxInstance) object).set(expr.name, value);
+        ((LoxInstance) object).set(expr.name, value, expr.cache);
         return value;
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = this.locals.get(expr);
+        int distance = expr.depth;
         LoxClass superclass = (LoxClass) this.environment.getAt(
-                distance, "super"
+                distance, 0
         );
 
         LoxInstance object = (LoxInstance) this.environment.getAt(
-                distance - 1, "this"
+                distance - 1, 0
         );
 
-        LoxFunction method = superclass.findMethod(expr.method.lexeme());
+        LoxFunction method = superclass.findMethod(expr);
 
         if (method == null) {
             throw new RuntimeError(
@@ -318,7 +425,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return this.lookUpVariable(expr.keyword, expr);
+        return this.lookUpVariable(expr.keyword, expr.depth, expr.slot);
     }
 
     @Override
@@ -326,7 +433,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         Object right = this.evaluate(expr.right);
 
         return switch (expr.operator.type()) {
-            case BANG -> !this.isTruthy(right);
+            case BANG -> !Interpreter.isTruthy(right);
             case MINUS -> {
                 if (right instanceof Double r) yield -r;
 
@@ -342,15 +449,27 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
 /* Interpreting Resolved Variables 11.4
         return this.environment.get(expr.name);
 */
-        return this.lookUpVariable(expr.name, expr);
+        return this.lookUpVariable(expr.name, expr.depth, expr.slot);
+    }
+
+    protected Object lookUpVariable(Token name, int depth, int slot) {
+        if (depth >= 0) {
+            return this.environment.getAt(depth, slot);
+        }
+
+        Object value = this.globals.get(name.symbol());
+        if (value != Globals.UNDEFINED) return value;
+
+        throw new RuntimeError(
+                name, "Undefined variable '" + name.lexeme() + "'."
+        );
     }
 
-    protected Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = this.locals.get(expr);
-        if (distance != null) {
-            return this.environment.getAt(distance, name.lexeme());
+    private void define(Token name, int slot, Object value) {
+        if (this.environment == null) {
+            this.globals.define(name.symbol(), value);
         } else {
-            return this.globals.get(name);
+            this.environment.define(slot, value);
         }
     }
 
@@ -367,13 +486,13 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    protected boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean) object;
         return true;
     }
 
-    protected boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) return true;
         if (a == null) return false;
 
@@ -384,7 +503,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         return a.equals(b);
     }
 
-    protected String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
 
         if (object instanceof Double) {
@@ -0,0 +1,26 @@
+package com.craftinginterpreters.lox;
+
+// A function body the parser only brace-matched. It is parsed and resolved
+// when the function is first called, from the tokens the lexer already made.
+final class LazyBody {
+    private final TokenStream tokens;
+    // The token after the body's '{'.
+    private final int start;
+
+    LazyBody(TokenStream tokens, int start) {
+        this.tokens = tokens;
+        this.start = start;
+    }
+
+    // Fills in the function's body, or reports its errors and stops the script.
+    void parse(Stmt.Function function) {
+        function.body = new Parser(this.tokens).body(this.start);
+        if (!Lox.hadError) new Resolver().resolveBody(function);
+
+        if (Lox.hadError) {
+            function.body = null;
+            throw new RuntimeError(function.name, "Function '" + function.name.lexeme() + "' has errors.");
+        }
+        function.lazy = null;
+    }
+}
@@ -1,7 +1,12 @@
 package com.craftinginterpreters.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import dev.digitalcodex.lemur.MappedStream;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static com.craftinginterpreters.lox.Token.TokenType;
 
@@ -26,191 +31,415 @@ public class Lexer {
         }
     }
 
-    private static final Map<String, TokenType> keywords;
+    // Character classes for ASCII; everything else is OTHER.
+    private static final byte OTHER = 0;
+    private static final byte SPACE = 1;
+    private static final byte NEWLINE = 2;
+    private static final byte DIGIT = 3;
+    private static final byte ALPHA = 4;
+    private static final byte QUOTE = 5;
+    private static final byte SLASH = 6;
+    private static final byte SINGLE = 7;
+    // A character that makes a second token when followed by '='.
+    private static final byte PAIRED = 8;
+
+    private static final byte[] CLASSES = new byte[128];
+    private static final TokenType[] SINGLES = new TokenType[128];
+    private static final TokenType[] PAIRS = new TokenType[128];
+
+    static {
+        for (char c = '0'; c <= '9'; c++) CLASSES[c] = DIGIT;
+        for (char c = 'a'; c <= 'z'; c++) CLASSES[c] = ALPHA;
+        for (char c = 'A'; c <= 'Z'; c++) CLASSES[c] = ALPHA;
+        CLASSES['_'] = ALPHA;
+        CLASSES[' '] = SPACE;
+        CLASSES['\t'] = SPACE;
+        CLASSES['\r'] = SPACE;
+        CLASSES['\n'] = NEWLINE;
+        CLASSES['"'] = QUOTE;
+        CLASSES['/'] = SLASH;
+
+        for (TokenType type : EnumSet.range(TokenType.PLUS, TokenType.RBRACE)) {
+            if (type == TokenType.SLASH) continue;
+            char c = type.lexeme().charAt(0);
+            CLASSES[c] = SINGLE;
+            SINGLES[c] = type;
+        }
+
+        TokenType[][] pairs = {
+                {TokenType.EQUAL, TokenType.EQUAL_EQUAL},
+                {TokenType.BANG, TokenType.BANG_EQUAL},
+                {TokenType.LESS, TokenType.LESS_EQUAL},
+                {TokenType.MORE, TokenType.MORE_EQUAL},
+        };
+        for (TokenType[] pair : pairs) {
+            char c = pair[0].lexeme().charAt(0);
+            CLASSES[c] = PAIRED;
+            SINGLES[c] = pair[0];
+            PAIRS[c] = pair[1];
+        }
+    }
+
+    // A perfect hash of the keywords on their first and last characters and length.
+    private static final String[] KEYWORD_NAMES = new String[32];
+    private static final TokenType[] KEYWORD_TYPES = new TokenType[32];
+
+    static {
+        for (TokenType type : EnumSet.range(TokenType.AND, TokenType.WHILE)) {
+            String name = type.lexeme();
+            int slot = Lexer.keywordSlot(name.charAt(0), name.charAt(name.length() - 1), name.length());
+            if (KEYWORD_NAMES[slot] != null) {
+                throw new IllegalStateException("Keywords '" + KEYWORD_NAMES[slot] + "' and '" + name + "' collide.");
+            }
+            KEYWORD_NAMES[slot] = name;
+            KEYWORD_TYPES[slot] = type;
+        }
+    }
+
+    // Every power of ten that is exactly representable as a double.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final Double[] SMALL_INTEGERS = new Double[256];
 
     static {
-        keywords = new HashMap<>();
-        keywords.put("fn", TokenType.FN);
-        keywords.put("if", TokenType.IF);
-        keywords.put("var", TokenType.VAR);
-        keywords.put("else", TokenType.ELSE);
-        keywords.put("true", TokenType.TRUE);
-        keywords.put("false", TokenType.FALSE);
-        keywords.put("return", TokenType.RETURN);
-
-        keywords.put("and", TokenType.AND);
-        keywords.put("class", TokenType.CLASS);
-        keywords.put("for", TokenType.FOR);
-        keywords.put("nil", TokenType.NIL);
-        keywords.put("or", TokenType.OR);
-        keywords.put("print", TokenType.PRINT);
-        keywords.put("super", TokenType.SUPER);
-        keywords.put("this", TokenType.THIS);
-        keywords.put("while", TokenType.WHILE);
-    }
-
-    private final String source;
+        for (int i = 0; i < SMALL_INTEGERS.length; i++) {
+            SMALL_INTEGERS[i] = (double) i;
+        }
+    }
+
+    // Sources at least this long are lexed in parallel, in chunks of at least half as much.
+    private static final int PARALLEL_THRESHOLD = 1 << 21;
+
+    // The tokens of a chunk lexed in parallel, and the errors held back until
+    // every chunk before it has reported its own.
+    private record Chunk(TokenStream tokens, List<String> errors, List<String> messages) {}
+
+    private final CharSequence source;
+    // Where this lexer stops, the end of the source unless it lexes one chunk.
+    private final int end;
 
     private int start = 0;
     private int current = 0;
 
     private int line = 1;
     private int lineIdx = 0;
+    // The next '\n' at or after the last place we looked, or the end of the source.
+    private int newline = -1;
 
     private final ErrorHandler handler;
     private int errorCnt = 0;
 
-    public Lexer(String source, ErrorHandler handler) {
+    // What scan() found besides the token's type and extent.
+    private Object literal = null;
+    private String text = null;
+
+    public Lexer(CharSequence source, ErrorHandler handler) {
+        this(source, handler, 0, source.length(), 1);
+    }
+
+    private Lexer(CharSequence source, ErrorHandler handler, int start, int end, int line) {
         this.source = source;
         this.handler = handler;
+        this.end = end;
+        this.start = start;
+        this.current = start;
+        this.line = line;
+        this.lineIdx = Math.max(start - 1, 0);
     }
 
     public Token next() {
-        while (this.current < this.source.length()) {
+        TokenType type = this.scan();
+        if (this.text != null) {
+            return new Token(type, this.start, this.current - this.start, this.line, this.text);
+        }
+
+        return new Token(type, this.source, this.start, this.current - this.start, this.line, this.literal);
+    }
+
+    // Lexes the whole source without creating a Token for each token.
+    TokenStream tokenize() {
+        return this.tokenize(ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    // Lexes in chunks for up to parallelism threads when the source is long enough.
+    TokenStream tokenize(int parallelism) {
+        if (this.current == 0 && this.end >= PARALLEL_THRESHOLD && parallelism > 1) {
+            return this.tokenizeInParallel(parallelism);
+        }
+
+        TokenStream tokens = new TokenStream(this.source);
+        while (this.lex(tokens) != TokenType.EOF);
+
+        return tokens;
+    }
+
+    private TokenStream tokenizeInParallel(int parallelism) {
+        int chunks = Math.min(this.end / (PARALLEL_THRESHOLD / 2), parallelism * 4);
+
+        // Strings and comments both end at the line, so every line start is
+        // outside of them and a chunk can begin at any one.
+        int[] bounds = new int[chunks + 1];
+        for (int i = 1; i < chunks; i++) {
+            int from = Math.max(bounds[i - 1], (int) ((long) this.end * i / chunks));
+            int newline = from < this.end ? this.indexOf('\n', from) : -1;
+            bounds[i] = newline < 0 ? this.end : newline + 1;
+        }
+        bounds[chunks] = this.end;
+
+        // Count the lines in each chunk to know the line each one starts on.
+        List<ForkJoinTask<Integer>> counts = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            int from = bounds[i], to = bounds[i + 1];
+            counts.add(ForkJoinTask.adapt(() -> this.countLines(from, to)));
+        }
+        ForkJoinTask.invokeAll(counts);
+
+        List<ForkJoinTask<Chunk>> lexed = new ArrayList<>(chunks);
+        int line = 1;
+        for (int i = 0; i < chunks; i++) {
+            int from = bounds[i], to = bounds[i + 1], first = line;
+            lexed.add(ForkJoinTask.adapt(() -> this.lexChunk(from, to, first)));
+            line += counts.get(i).join();
+        }
+        ForkJoinTask.invokeAll(lexed);
+
+        int size = 0;
+        for (ForkJoinTask<Chunk> chunk : lexed) size += chunk.join().tokens().size();
+
+        TokenStream tokens = new TokenStream(this.source, size);
+        for (int i = 0; i < chunks; i++) {
+            Chunk chunk = lexed.get(i).join();
+            for (String error : chunk.errors()) Lox.report(error);
+            for (String message : chunk.messages()) this.handler.handle(message);
+
+            tokens.append(chunk.tokens());
+            // Only the last chunk ends at the end of the source.
+            if (i < chunks - 1) tokens.dropLast();
+        }
+
+        return tokens;
+    }
+
+    private Chunk lexChunk(int from, int to, int line) {
+        List<String> errors = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        // A chunk may run inline on a caller that defers its own errors.
+        List<String> previous = Lox.defer(errors);
+        try {
+            Lexer lexer = new Lexer(this.source, this.handler == null ? null : messages::add, from, to, line);
+            TokenStream tokens = new TokenStream(this.source, TokenStream.capacity(to - from));
+            while (lexer.lex(tokens) != TokenType.EOF);
+
+            return new Chunk(tokens, errors, messages);
+        } finally {
+            Lox.defer(previous);
+        }
+    }
+
+    private int countLines(int from, int to) {
+        int count = 0;
+        for (int i = this.indexOf('\n', from); i >= 0 && i < to; i = this.indexOf('\n', i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    // Lexes the source one token at a time as the stream is read.
+    TokenStream stream() {
+        return new TokenStream(this.source, this::lex);
+    }
+
+    // Adds the next token to tokens and returns its type.
+    TokenType lex(TokenStream tokens) {
+        TokenType type = this.scan();
+        Object literal = this.text != null ? this.text : this.literal;
+        tokens.add(type, this.start, this.current - this.start, this.line, literal);
+        return type;
+    }
+
+    private TokenType scan() {
+        int length = this.end;
+        while (this.current < length) {
             this.start = this.current;
 
-            char c = this.peek(0);
-            switch (c) {
-                case '=' -> {
-                    return this.emit(
-                            this.match('=') ? TokenType.EQUAL_EQUAL
-                                    : TokenType.EQUAL
-                    );
+            char c = this.source.charAt(this.current);
+            switch (Lexer.classOf(c)) {
+                case SPACE -> {
+                    int end = this.current + 1;
+                    while (end < length && Lexer.classOf(this.source.charAt(end)) == SPACE) end++;
+                    this.current = end;
                 }
-                case '!' -> {
-                    return this.emit(
-                            this.match('=') ? TokenType.BANG_EQUAL
-                                    : TokenType.BANG
-                    );
+                case NEWLINE -> {
+                    this.lineIdx = this.current; this.line++;
+                    this.current++;
                 }
-                case '<' -> {
-                    return this.emit(
-                            this.match('=') ? TokenType.LESS_EQUAL
-                                    : TokenType.LESS
-                    );
+                case DIGIT -> {
+                    return this.number();
                 }
-                case '>' -> {
-                    return this.emit(
-                            this.match('=') ? TokenType.MORE_EQUAL
-                                    : TokenType.MORE
-                    );
+                case ALPHA -> {
+                    return this.ident();
                 }
-                case '+' -> {
-                    return this.emit(TokenType.PLUS);
+                case QUOTE -> {
+                    return this.string();
                 }
-                case '-' -> {
-                    return this.emit(TokenType.MINUS);
+                case SINGLE -> {
+                    return this.emit(SINGLES[c]);
                 }
-                case '*' -> {
-                    return this.emit(TokenType.STAR);
+                case PAIRED -> {
+                    return this.emit(this.match('=') ? PAIRS[c] : SINGLES[c]);
                 }
-                case '/' -> {
+                case SLASH -> {
                     if (this.match('/')) {
                         // A comment goes until the end of the line.
-                        for (char ch = this.peek(0); ch != '\n' && ch != 0; ch = this.peek(0)) {
-                            this.advance();
-                        }
+                        this.current = this.nextNewline(this.current);
                     } else {
                         return this.emit(TokenType.SLASH);
                     }
                 }
-                case ',' -> {
-                    return this.emit(TokenType.COMMA);
-                }
-                case '.' -> {
-                    return this.emit(TokenType.DOT);
-                }
-                case ';' -> {
-                    return this.emit(TokenType.SEMICOLON);
-                }
-                case '(' -> {
-                    return this.emit(TokenType.LPAREN);
-                }
-                case ')' -> {
-                    return this.emit(TokenType.RPAREN);
-                }
-                case '{' -> {
-                    return this.emit(TokenType.LBRACE);
-                }
-                case '}' -> {
-                    return this.emit(TokenType.RBRACE);
-                }
-                case '\t', '\n', '\r', ' ' -> {
-                    for (char ch = this.peek(0); ch == '\t' ||  ch == '\n' || ch == '\r' || ch == ' '; ch = this.peek(0)) {
-                        if (ch == '\n') {
-                            this.lineIdx = this.current; this.line++;
-                        }
-                        this.advance();
-                    }
-                }
-                case '"' -> {
-                    return this.string();
-                }
                 default -> {
-                    if (this.isDigit(c)) {
-                        return this.number();
-                    } else if (this.isAlpha(c)) {
-                        return this.ident();
-                    } else {
-                        Lox.error(line, "Unexpected character.");
-                    }
+                    Lox.error(line, "Unexpected character.");
+                    this.advance();
                 }
             }
         }
 
+        this.start = this.current;
         return this.emit(TokenType.EOF, "");
     }
 
-    private Token string() {
+    private TokenType string() {
         // The opening quote.
         this.advance();
 
-        for (char ch = this.peek(0); ch != '"' && ch != '\n' && ch != 0; ch = this.peek(0)) this.advance();
-
-        if (this.peek(0) != '"') {
+        // Strings end at the line, so look for the quote no further than the newline.
+        int newline = this.nextNewline(this.current);
+        int quote = this.indexOf('"', this.current);
+        if (quote < 0 || quote > newline) {
+            this.current = newline;
             return this.emit(TokenType.ILLEGAL, this.error(ErrorType.UNTERMINATED_STRING));
         }
 
         // The closing quote.
-        this.advance();
+        this.current = quote + 1;
+
+        // The token keeps its quotes; Token.lexeme trims them.
+        return this.slice(TokenType.STRING, null);
+    }
+
+    private TokenType ident() {
+        int end = this.current + 1;
+        while (end < this.end && Lexer.isAlphaNumeric(this.source.charAt(end))) end++;
+        this.current = end;
 
-        // Trim the surrounding quotes.
-        return this.emit(TokenType.STRING, this.source.substring(this.start + 1, this.current - 1));
+        TokenType type = this.identType();
+        if (type != TokenType.IDENT) return this.slice(type, null);
+        return this.slice(type, Symbol.of(this.source, this.start, this.current - this.start));
     }
 
-    private Token ident() {
-        while (this.isAlphaNumeric(this.peek(0))) this.advance();
+    // Looks the identifier up in place, without copying the name out.
+    private TokenType identType() {
+        int length = this.current - this.start;
+        int slot = Lexer.keywordSlot(
+                this.source.charAt(this.start), this.source.charAt(this.current - 1), length
+        );
+
+        String keyword = KEYWORD_NAMES[slot];
+        if (keyword != null && keyword.length() == length && this.matches(keyword, this.start)) {
+            return KEYWORD_TYPES[slot];
+        }
 
-        String text = this.source.substring(this.start, this.current);
-        TokenType type = keywords.get(text);
-        if (type == null) type = TokenType.IDENT;
-        return this.emit(type, text);
+        return TokenType.IDENT;
     }
 
-    private Token number() {
-        while (this.isDigit(this.peek(0))) this.advance();
+    private static int keywordSlot(char first, char last, int length) {
+        return (first + last * 5 + length) & (KEYWORD_NAMES.length - 1);
+    }
+
+    private TokenType number() {
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = 0;
+        for (char ch = this.peek(0); Lexer.isDigit(ch); ch = this.peek(0)) {
+            mantissa = mantissa * 10 + (ch - '0');
+            digits++;
+            this.advance();
+        }
 
         // Look for a fractional part.
-        if (this.peek(0) == '.' && this.isDigit(this.peek(1))) {
+        if (this.peek(0) == '.' && Lexer.isDigit(this.peek(1))) {
             // Consume the "."
             this.advance();
 
+            for (char ch = this.peek(0); Lexer.isDigit(ch); ch = this.peek(0)) {
+                mantissa = mantissa * 10 + (ch - '0');
+                digits++;
+                fraction++;
+                this.advance();
+            }
+        }
 
-            while (this.isDigit(this.peek(0))) this.advance();
+        return this.slice(TokenType.NUMBER, this.toDouble(mantissa, digits, fraction));
+    }
+
+    private Double toDouble(long mantissa, int digits, int fraction) {
+        // Up to 15 digits the mantissa is exact, and dividing it by an exact power
+        // of ten is a single correctly rounded operation.
+        if (digits <= 15 && fraction < POWERS_OF_TEN.length) {
+            if (fraction == 0 && mantissa < SMALL_INTEGERS.length) {
+                return SMALL_INTEGERS[(int) mantissa];
+            }
+            return mantissa / POWERS_OF_TEN[fraction];
         }
 
-        return this.emit(TokenType.NUMBER, this.source.substring(this.start, this.current));
+        return Double.valueOf(this.source.subSequence(this.start, this.current).toString());
+    }
+
+    // String.indexOf is intrinsified to a vectorised search, and a mapped file is
+    // searched a word at a time, so long comments and strings are skipped many
+    // characters at a time.
+    private int nextNewline(int from) {
+        if (this.newline < from) {
+            this.newline = this.indexOf('\n', from);
+            if (this.newline < 0) this.newline = this.end;
+        }
+
+        return this.newline;
+    }
+
+    private int indexOf(char c, int from) {
+        if (this.source instanceof String text) {
+            int index = text.indexOf(c, from);
+            return index < this.end ? index : -1;
+        }
+        if (this.source instanceof MappedStream mapped) {
+            return mapped.indexOf(c, from, this.end);
+        }
+
+        for (int i = from; i < this.end; i++) {
+            if (this.source.charAt(i) == c) return i;
+        }
+        return -1;
+    }
+
+    private boolean matches(String text, int start) {
+        for (int i = 0; i < text.length(); i++) {
+            if (this.source.charAt(start + i) != text.charAt(i)) return false;
+        }
+        return true;
     }
 
     private char peek(int n) {
-        if (this.current + n < this.source.length())
+        if (this.current + n < this.end)
             return this.source.charAt(this.current + n);
         else
             return '\0';
     }
 
     private void advance() {
-        if (this.current < this.source.length()) this.current++;
+        if (this.current < this.end) this.current++;
     }
 
     private boolean match(char expected) {
@@ -222,27 +451,35 @@ public class Lexer {
         return false;
     }
 
-    private boolean isAlpha(char c) {
-        return (c >= 'a' && c <= 'z') ||
-                (c >= 'A' && c <= 'Z') ||
-                c == '_';
+    private static byte classOf(char c) {
+        return c < CLASSES.length ? CLASSES[c] : OTHER;
     }
 
-    private boolean isDigit(char c) {
-        return c >= '0' && c <= '9';
+    private static boolean isDigit(char c) {
+        return Lexer.classOf(c) == DIGIT;
     }
 
-    private boolean isAlphaNumeric(char c) {
-        return this.isAlpha(c) || this.isDigit(c);
+    private static boolean isAlphaNumeric(char c) {
+        byte type = Lexer.classOf(c);
+        return type == ALPHA || type == DIGIT;
     }
 
-    private Token emit(TokenType type) {
+    private TokenType emit(TokenType type) {
         this.advance();
-        return this.emit(type, type.lexeme());
+        return this.slice(type, null);
+    }
+
+    private TokenType slice(TokenType type, Object literal) {
+        this.literal = literal;
+        this.text = null;
+        return type;
     }
 
-    private Token emit(TokenType type, String lexeme) {
-        return new Token(type, this.current, this.current - this.start, this.line, lexeme);
+    // For tokens whose text is not in the source, such as error messages.
+    private TokenType emit(TokenType type, String lexeme) {
+        this.literal = null;
+        this.text = lexeme;
+        return type;
     }
 
     private String error(ErrorType type) {
@@ -252,7 +489,7 @@ public class Lexer {
             if (this.lineIdx != 0) {
                 start = this.lineIdx + 1;
             }
-            String line = String.format("%d | %s\n", this.line, this.source.substring(start, this.current));
+            String line = String.format("%d | %s\n", this.line, this.source.subSequence(start, this.current));
             msg.append(line);
             int off = line.length();
             msg.append(" ".repeat(off+2));
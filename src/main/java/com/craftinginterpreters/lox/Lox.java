@@ -1,23 +1,59 @@
 package com.craftinginterpreters.lox;
 
-import java.io.BufferedReader;
+import dev.digitalcodex.lemur.CharacterEncoding;
+import dev.digitalcodex.lemur.MappedStream;
+
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import static com.craftinginterpreters.lox.Token.TokenType;
 public class Lox {
+    private enum Backend {
+        INTERPRETER,
+        CLOSURES,
+        VM
+    }
+
     private static final Interpreter interpreter = new Interpreter();
+    private static final VM vm = new VM();
+    private static Backend backend = Backend.INTERPRETER;
+    private static boolean streaming = false;
+    private static boolean pipelined = false;
+    private static boolean cached = false;
+    private static boolean lazy = false;
+    // Errors reported on this thread are collected here rather than printed, if set.
+    private static final ThreadLocal<List<String>> deferred = new ThreadLocal<>();
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
 
     public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--vm")) {
+            Lox.backend = Backend.VM;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        } else if (args.length > 0 && args[0].equals("--closures")) {
+            Lox.backend = Backend.CLOSURES;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length > 0 && args[0].equals("--stream")) {
+            Lox.streaming = true;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        } else if (args.length > 0 && args[0].equals("--pipeline")) {
+            Lox.pipelined = true;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        } else if (args.length > 0 && args[0].equals("--cache")) {
+            Lox.cached = true;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        } else if (args.length > 0 && args[0].equals("--lazy")) {
+            Lox.lazy = true;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
         if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+            System.out.println("Usage: jlox [--vm | --closures] [--stream | --pipeline | --cache | --lazy] [script]");
             System.exit(64);
         } else if (args.length == 1) {
             Lox.runFile(Paths.get(args[0]));
@@ -27,41 +63,139 @@ public class Lox {
     }
 
     private static void runFile(Path path) throws IOException {
-        byte[] bytes = Files.readAllBytes(path);
-        Lox.run(new String(bytes, Charset.defaultCharset()));
+        if (Lox.cached) {
+            Lox.runCached(path);
+        } else {
+            Lox.runSource(path);
+        }
 
         // Indicate an error in the exit code.
         if (Lox.hadError) System.exit(65);
         if (Lox.hadRuntimeError) System.exit(70);
     }
 
-    private static void runPrompt() throws IOException {
-        InputStreamReader input = new InputStreamReader(System.in);
-        BufferedReader reader = new BufferedReader(input);
+    private static void runSource(Path path) throws IOException {
+        // The lexer reads the mapped file in place rather than a decoded copy.
+        // Tokens are views into it, so it stays mapped until the script is done.
+        try (MappedStream source = new MappedStream(path, CharacterEncoding.UTF_8)) {
+            if (Lox.pipelined) {
+                try (Pipeline pipeline = new Pipeline(source)) {
+                    Lox.stream(pipeline);
+                }
+            } else if (Lox.streaming) {
+                Lox.stream(new Parser(source, true));
+            } else {
+                Lox.run(source);
+            }
+        }
+    }
+
+    // Runs the resolved program cached for this exact source if there is one, and
+    // caches it otherwise. Only programs without syntax or resolution errors are kept.
+    private static void runCached(Path path) throws IOException {
+        AstCache cache = new AstCache(AstCache.directory());
+
+        // The key is hashed from the mapping that is parsed, so what is stored
+        // under it is always the program it names, even if the file changes.
+        try (MappedStream source = new MappedStream(path, CharacterEncoding.UTF_8)) {
+            String key = AstCache.key(source.bytes());
+
+            List<Stmt> statements = cache.load(key);
+            if (statements == null) {
+                statements = Lox.parse(source);
+                if (statements == null) return;
+
+                cache.store(key, statements);
+            }
+            Lox.execute(statements);
+        }
+    }
+
+    private static void runPrompt() {
+        Prompt prompt = new Prompt(System.in);
 
         for (;;) {
             System.out.print("> ");
-            String line = reader.readLine();
+            String line = prompt.readLine();
             if (line == null) break;
             Lox.run(line);
             Lox.hadError = false;
         }
     }
 
-    private static void run(String source) {
+    private static void run(CharSequence source) {
+        List<Stmt> statements = Lox.parse(source);
+        if (statements != null) Lox.execute(statements);
+    }
+
+    // The resolved program, or null if it has errors.
+    private static List<Stmt> parse(CharSequence source) {
         Parser parser = new Parser(source);
+        // The compiling backends need every body up front.
+        if (Lox.lazy && Lox.backend == Backend.INTERPRETER) parser.parseBodiesLazily();
         List<Stmt> statements = parser.parse();
 
         // Stop if there was a syntax error.
-        if (Lox.hadError) return;
+        if (Lox.hadError) return null;
 
-        Resolver resolver = new Resolver(interpreter);
+        Resolver resolver = new Resolver();
         resolver.resolve(statements);
 
         // Stop if there was a resolution error.
-        if (Lox.hadError) return;
+        if (Lox.hadError) return null;
 
-        Lox.interpreter.interpret(statements);
+        return statements;
+    }
+
+    private static void execute(List<Stmt> statements) {
+        switch (Lox.backend) {
+            case INTERPRETER -> Lox.interpreter.interpret(statements);
+            case CLOSURES -> {
+                ClosureCompiler compiler = new ClosureCompiler(Lox.interpreter);
+                Lox.interpreter.interpret(compiler.compile(statements));
+            }
+            case VM -> {
+                Compiler compiler = new Compiler();
+                Obj.Function script = compiler.compile(statements);
+
+                // Stop if there was a compile error.
+                if (Lox.hadError) return;
+
+                Lox.vm.interpret(script);
+            }
+        }
+    }
+
+    // Runs a script one top-level declaration at a time. Each is resolved and run
+    // as soon as it is parsed, then left for the collector unless a function or
+    // class retains it, so memory does not grow with the length of the script.
+    private static void stream(Iterator<Stmt> declarations) {
+        Resolver resolver = new Resolver();
+        ClosureCompiler closures = new ClosureCompiler(Lox.interpreter);
+
+        while (declarations.hasNext()) {
+            Stmt statement = declarations.next();
+
+            // After a syntax error keep parsing to report the rest, but run nothing.
+            if (Lox.hadError) continue;
+
+            List<Stmt> statements = List.of(statement);
+            resolver.resolve(statements);
+            if (Lox.hadError) continue;
+
+            switch (Lox.backend) {
+                case INTERPRETER -> Lox.interpreter.interpret(statements);
+                case CLOSURES -> Lox.interpreter.interpret(closures.compile(statements));
+                case VM -> {
+                    Obj.Function script = new Compiler().compile(statements);
+                    if (Lox.hadError) continue;
+
+                    Lox.vm.interpret(script);
+                }
+            }
+
+            if (Lox.hadRuntimeError) return;
+        }
     }
 
     static void error(int line, String message) {
@@ -69,12 +203,28 @@ public class Lox {
     }
 
     private static void report(int line, String where, String message) {
-        System.out.println(
-                "[line " + line + "] Error" + where + ": " + message
-        );
+        Lox.report("[line " + line + "] Error" + where + ": " + message);
+    }
+
+    static void report(String error) {
+        List<String> errors = Lox.deferred.get();
+        if (errors != null) {
+            errors.add(error);
+            return;
+        }
+
+        System.out.println(error);
         Lox.hadError = true;
     }
 
+    // Collects the errors reported on this thread in errors, for a pipeline
+    // stage to hand to the main thread in order. Returns the list it replaces.
+    static List<String> defer(List<String> errors) {
+        List<String> previous = Lox.deferred.get();
+        Lox.deferred.set(errors);
+        return previous;
+    }
+
     static void error(Token token, String message) {
         if (token.type() == TokenType.EOF) {
             Lox.report(token.line(), " at end", message);
@@ -87,7 +237,7 @@ public class Lox {
 
     static void runtimeError(RuntimeError error) {
         System.out.println(
-                error.getMessage() + "\n[line " + error.token.line() + "]"
+                error.getMessage() + "\n[line " + error.line + "]"
         );
         Lox.hadRuntimeError = true;
     }
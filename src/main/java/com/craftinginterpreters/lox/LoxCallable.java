@@ -1,8 +1,23 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
-
 interface LoxCallable {
     int arity();
-    Object call(Interpreter interpreter, List<Object> arguments);
+    Object call(Interpreter interpreter, Object[] arguments);
+
+    // Fixed-arity entry points, so call sites with few arguments need no array.
+    default Object call0(Interpreter interpreter) {
+        return this.call(interpreter, new Object[0]);
+    }
+
+    default Object call1(Interpreter interpreter, Object a0) {
+        return this.call(interpreter, new Object[]{a0});
+    }
+
+    default Object call2(Interpreter interpreter, Object a0, Object a1) {
+        return this.call(interpreter, new Object[]{a0, a1});
+    }
+
+    default Object call3(Interpreter interpreter, Object a0, Object a1, Object a2) {
+        return this.call(interpreter, new Object[]{a0, a1, a2});
+    }
 }
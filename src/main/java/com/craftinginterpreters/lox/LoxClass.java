@@ -1,44 +1,93 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 
 class LoxClass implements LoxCallable {
     final String name;
     final LoxClass superclass;
-    private final Map<String, LoxFunction> methods;
+    // Inherited methods copied down, so lookup never walks the superclass chain.
+    private final Map<Symbol, LoxFunction> methods;
+    private final LoxFunction initializer;
 
-    LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+    LoxClass(String name, LoxClass superclass, Map<Symbol, LoxFunction> methods) {
         this.name = name;
         this.superclass = superclass;
-        this.methods = methods;
-    }
 
-    LoxFunction findMethod(String name) {
-        if (this.methods.containsKey(name)) {
-            return this.methods.get(name);
+        this.methods = new HashMap<>();
+        if (superclass != null) {
+            this.methods.putAll(superclass.methods);
         }
+        this.methods.putAll(methods);
+
+        this.initializer = this.methods.get(Symbol.INIT);
+    }
+
+    LoxFunction findMethod(Symbol name) {
+        return this.methods.get(name);
+    }
 
-        if (this.superclass != null) {
-            return this.superclass.findMethod(name);
+    LoxFunction findMethod(Expr.Super expr) {
+        // A super expression sees the same superclass every time unless its class is redefined.
+        if (expr.cachedClass != this) {
+            expr.cachedMethod = this.methods.get(expr.method.symbol());
+            expr.cachedClass = this;
         }
 
-        return null;
+        return expr.cachedMethod;
     }
 
     @Override
     public int arity() {
-        LoxFunction initializer = this.findMethod("init");
-        if (initializer == null) return 0;
-        return initializer.arity();
+        if (this.initializer == null) return 0;
+        return this.initializer.arity();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        LoxInstance instance = new LoxInstance(this);
+        if (this.initializer != null) {
+            this.initializer.invoke(interpreter, instance, arguments);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        LoxInstance instance = new LoxInstance(this);
+        if (this.initializer != null) {
+            this.initializer.invoke0(interpreter, instance);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a0) {
+        LoxInstance instance = new LoxInstance(this);
+        if (this.initializer != null) {
+            this.initializer.invoke1(interpreter, instance, a0);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a0, Object a1) {
+        LoxInstance instance = new LoxInstance(this);
+        if (this.initializer != null) {
+            this.initializer.invoke2(interpreter, instance, a0, a1);
+        }
+
+        return instance;
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
+    public Object call3(Interpreter interpreter, Object a0, Object a1, Object a2) {
         LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = this.findMethod("init");
-        if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+        if (this.initializer != null) {
+            this.initializer.invoke3(interpreter, instance, a0, a1, a2);
         }
 
         return instance;
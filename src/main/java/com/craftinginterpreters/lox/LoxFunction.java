@@ -1,22 +1,25 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
-
 class LoxFunction implements LoxCallable {
-    private final Stmt.Function declaration;
-    private final Environment closure;
-    private final boolean isInitializer;
+    final Stmt.Function declaration;
+    final Environment closure;
+    final boolean isInitializer;
+    // The instance a method was bound to, or null.
+    final LoxInstance receiver;
 
     LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+        this(declaration, closure, isInitializer, null);
+    }
+
+    LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer, LoxInstance receiver) {
         this.declaration = declaration;
         this.closure = closure;
         this.isInitializer = isInitializer;
+        this.receiver = receiver;
     }
 
     LoxFunction bind(LoxInstance instance) {
-        Environment environment = new Environment(this.closure);
-        environment.define("this", instance);
-        return new LoxFunction(this.declaration, environment, this.isInitializer);
+        return new LoxFunction(this.declaration, this.closure, this.isInitializer, instance);
     }
 
     @Override
@@ -25,27 +28,96 @@ class LoxFunction implements LoxCallable {
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return this.invoke(interpreter, this.receiver, arguments);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return this.invoke0(interpreter, this.receiver);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a0) {
+        return this.invoke1(interpreter, this.receiver, a0);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a0, Object a1) {
+        return this.invoke2(interpreter, this.receiver, a0, a1);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a0, Object a1, Object a2) {
+        return this.invoke3(interpreter, this.receiver, a0, a1, a2);
+    }
+
+    Object invoke(Interpreter interpreter, LoxInstance receiver, Object[] arguments) {
 /* Local Function and Closure 10.6
         Environment environment = new Environment(interpreter.globals);
 */
-        Environment environment = new Environment(this.closure);
-        for (int i = 0; i < this.declaration.params.size(); i++) {
-            environment.define(
-                    this.declaration.params.get(i).lexeme(), arguments.get(i)
-            );
+        Environment environment = this.frame(receiver);
+        int first = this.firstParameter();
+        for (int i = 0; i < arguments.length; i++) {
+            environment.define(first + i, arguments[i]);
         }
 
-        try {
-            interpreter.executeBlock(this.declaration.body, environment);
-        } catch (Return returnValue) {
-            if (this.isInitializer) return this.closure.getAt(0, "this");
+        return this.execute(interpreter, receiver, environment);
+    }
+
+    Object invoke0(Interpreter interpreter, LoxInstance receiver) {
+        return this.execute(interpreter, receiver, this.frame(receiver));
+    }
+
+    Object invoke1(Interpreter interpreter, LoxInstance receiver, Object a0) {
+        Environment environment = this.frame(receiver);
+        int first = this.firstParameter();
+        environment.define(first, a0);
+        return this.execute(interpreter, receiver, environment);
+    }
+
+    Object invoke2(Interpreter interpreter, LoxInstance receiver, Object a0, Object a1) {
+        Environment environment = this.frame(receiver);
+        int first = this.firstParameter();
+        environment.define(first, a0);
+        environment.define(first + 1, a1);
+        return this.execute(interpreter, receiver, environment);
+    }
+
+    Object invoke3(Interpreter interpreter, LoxInstance receiver, Object a0, Object a1, Object a2) {
+        Environment environment = this.frame(receiver);
+        int first = this.firstParameter();
+        environment.define(first, a0);
+        environment.define(first + 1, a1);
+        environment.define(first + 2, a2);
+        return this.execute(interpreter, receiver, environment);
+    }
+
+    // Runs the body in a frame whose receiver and parameters are already defined.
+    Object execute(Interpreter interpreter, LoxInstance receiver, Environment environment) {
+        interpreter.executeBlock(this.declaration.body, environment);
+        Object value = interpreter.takeReturnValue();
+
+        if (this.isInitializer) return receiver;
+        return value;
+    }
 
-            return returnValue.value;
+    private Environment frame(LoxInstance receiver) {
+        if (this.declaration.body == null) this.declaration.lazy.parse(this.declaration);
+
+        Environment environment = new Environment(
+                this.closure, this.declaration.frameSize
+        );
+
+        if (this.declaration.isMethod) {
+            environment.define(0, receiver);
         }
 
-        if (this.isInitializer) return this.closure.getAt(0, "this");
-        return null;
+        return environment;
+    }
+
+    private int firstParameter() {
+        return this.declaration.isMethod ? 1 : 0;
     }
 
     @Override
@@ -1,22 +1,25 @@
 package com.craftinginterpreters.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 class LoxInstance {
+    private static final Object[] NO_FIELDS = new Object[0];
+
     private final LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    private Shape shape = Shape.EMPTY;
+    private Object[] fields = NO_FIELDS;
 
     LoxInstance(LoxClass klass) {
         this.klass = klass;
     }
 
     Object get(Token name) {
-        if (this.fields.containsKey(name.lexeme())) {
-            return this.fields.get(name.lexeme());
+        int slot = this.shape.lookup(name.symbol());
+        if (slot >= 0) {
+            return this.fields[slot];
         }
 
-        LoxFunction method = klass.findMethod(name.lexeme());
+        LoxFunction method = klass.findMethod(name.symbol());
 /* This 12.6
         if (method != null) return method;
 */
@@ -25,8 +28,73 @@ class LoxInstance {
         throw new RuntimeError(name, "Undefined property '" + name.lexeme() + "'.");
     }
 
+    Object get(Token name, PropertyCache cache) {
+        int entry = cache.find(this.shape, this.klass);
+        if (entry >= 0) {
+            LoxFunction method = cache.method(entry);
+            if (method != null) return method.bind(this);
+            return this.fields[cache.slot(entry)];
+        }
+
+        int slot = this.shape.lookup(name.symbol());
+        if (slot >= 0) {
+            cache.add(this.shape, this.klass, slot, this.shape, null);
+            return this.fields[slot];
+        }
+
+        LoxFunction method = klass.findMethod(name.symbol());
+        if (method != null) {
+            cache.add(this.shape, this.klass, -1, this.shape, method);
+            return method.bind(this);
+        }
+
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme() + "'.");
+    }
+
+    // The method a call site would invoke, or null when a field shadows it.
+    LoxFunction findMethod(Token name, PropertyCache cache) {
+        int entry = cache.find(this.shape, this.klass);
+        if (entry >= 0) return cache.method(entry);
+
+        if (this.shape.lookup(name.symbol()) >= 0) return null;
+
+        LoxFunction method = klass.findMethod(name.symbol());
+        if (method != null) {
+            cache.add(this.shape, this.klass, -1, this.shape, method);
+        }
+        return method;
+    }
+
     void set(Token name, Object value) {
-        this.fields.put(name.lexeme(), value);
+        int slot = this.shape.lookup(name.symbol());
+        if (slot < 0) {
+            slot = this.shape.size();
+            this.grow(this.shape.with(name.symbol()));
+        }
+
+        this.fields[slot] = value;
+    }
+
+    void set(Token name, Object value, PropertyCache cache) {
+        int entry = cache.find(this.shape, null);
+        if (entry >= 0) {
+            Shape transition = cache.transition(entry);
+            if (transition != this.shape) this.grow(transition);
+            this.fields[cache.slot(entry)] = value;
+            return;
+        }
+
+        Shape before = this.shape;
+        this.set(name, value);
+        cache.add(before, null, this.shape.lookup(name.symbol()), this.shape, null);
+    }
+
+    private void grow(Shape next) {
+        int slot = this.shape.size();
+        this.shape = next;
+        if (slot == this.fields.length) {
+            this.fields = Arrays.copyOf(this.fields, Math.max(4, slot * 2));
+        }
     }
 
     @Override
@@ -0,0 +1,137 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+abstract class Obj {
+    static class Function extends Obj {
+        Function(String name, int arity) {
+            this.name = name;
+            this.arity = arity;
+        }
+
+        @Override
+        public String toString() {
+            if (this.name == null) return "<script>";
+            return "<fn " + this.name + ">";
+        }
+
+        final String name;
+        final int arity;
+        final Chunk chunk = new Chunk();
+        int upvalueCount;
+    }
+
+    static class Closure extends Obj {
+        Closure(Function function, Upvalue[] upvalues) {
+            this.function = function;
+            this.upvalues = upvalues;
+        }
+
+        @Override
+        public String toString() {
+            return this.function.toString();
+        }
+
+        final Function function;
+        final Upvalue[] upvalues;
+    }
+
+    // A captured variable. It points at the variable's stack slot until the
+    // variable goes out of scope, then holds the value itself.
+    static class Upvalue extends Obj {
+        Upvalue(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String toString() {
+            return "upvalue";
+        }
+
+        // -1 once closed.
+        int slot;
+        Object value;
+        // The next open upvalue, for a lower slot.
+        Upvalue next;
+    }
+
+    static class BoundMethod extends Obj {
+        BoundMethod(Instance receiver, Closure method) {
+            this.receiver = receiver;
+            this.method = method;
+        }
+
+        @Override
+        public String toString() {
+            return this.method.toString();
+        }
+
+        final Instance receiver;
+        final Closure method;
+    }
+
+    static class Class extends Obj {
+        Class(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return this.name;
+        }
+
+        final String name;
+        final Map<Symbol, Closure> methods = new HashMap<>();
+        Closure initializer;
+    }
+
+    static class Instance extends Obj {
+        Instance(Class klass) {
+            this.klass = klass;
+        }
+
+        void set(Symbol name, Object value) {
+            int slot = this.shape.lookup(name);
+            if (slot < 0) {
+                slot = this.shape.size();
+                this.shape = this.shape.with(name);
+                if (slot == this.fields.length) {
+                    this.fields = Arrays.copyOf(this.fields, Math.max(4, slot * 2));
+                }
+            }
+
+            this.fields[slot] = value;
+        }
+
+        @Override
+        public String toString() {
+            return this.klass.name + " instance";
+        }
+
+        final Class klass;
+        Shape shape = Shape.EMPTY;
+        Object[] fields = new Object[0];
+    }
+
+    static class Native extends Obj {
+        @FunctionalInterface
+        interface Body {
+            Object call(Object[] arguments);
+        }
+
+        Native(int arity, Body body) {
+            this.arity = arity;
+            this.body = body;
+        }
+
+        @Override
+        public String toString() {
+            return "<native fn>";
+        }
+
+        final int arity;
+        final Body body;
+    }
+}
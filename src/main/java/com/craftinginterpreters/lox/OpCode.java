@@ -0,0 +1,59 @@
+package com.craftinginterpreters.lox;
+
+final class OpCode {
+    private OpCode() {
+        super();
+    }
+
+    // Constants and literals.
+    static final byte CONSTANT = 0;       // u16 constant
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+
+    // Variables. Locals are stack slots counted from the frame's base.
+    static final byte GET_LOCAL = 5;      // u16 slot
+    static final byte SET_LOCAL = 6;      // u16 slot
+    static final byte GET_UPVALUE = 7;    // u16 index
+    static final byte SET_UPVALUE = 8;    // u16 index
+    static final byte GET_GLOBAL = 9;     // u16 name
+    static final byte SET_GLOBAL = 10;    // u16 name
+    static final byte DEFINE_GLOBAL = 11; // u16 name
+
+    // Properties.
+    static final byte GET_PROPERTY = 12;  // u16 name
+    static final byte SET_PROPERTY = 13;  // u16 name
+    static final byte GET_SUPER = 14;     // u16 name
+
+    // Operators.
+    static final byte EQUAL = 15;
+    static final byte NOT_EQUAL = 16;
+    static final byte GREATER = 17;
+    static final byte GREATER_EQUAL = 18;
+    static final byte LESS = 19;
+    static final byte LESS_EQUAL = 20;
+    static final byte ADD = 21;
+    static final byte SUBTRACT = 22;
+    static final byte MULTIPLY = 23;
+    static final byte DIVIDE = 24;
+    static final byte NOT = 25;
+    static final byte NEGATE = 26;
+
+    // Statements and control flow.
+    static final byte PRINT = 27;
+    static final byte JUMP = 28;          // u16 forward offset
+    static final byte JUMP_IF_FALSE = 29; // u16 forward offset
+    static final byte LOOP = 30;          // u16 backward offset
+    static final byte CALL = 31;          // u8 argument count
+    static final byte CLOSURE = 32;       // u16 function, then u8 is local, u16 index per upvalue
+    static final byte CLOSE_UPVALUE = 33;
+    static final byte RETURN = 34;
+
+    // Classes.
+    static final byte CLASS = 35;         // u16 name
+    static final byte INHERIT = 36;
+    static final byte METHOD = 37;        // u16 name
+    static final byte INVOKE = 38;        // u16 name, u8 argument count
+    static final byte SUPER_INVOKE = 39;  // u16 name, u8 argument count
+}
@@ -1,23 +1,86 @@
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 
 import static com.craftinginterpreters.lox.Token.TokenType;
-class Parser {
+class Parser implements Iterator<Stmt> {
     private static class ParseError extends RuntimeException {}
 
-    private final Lexer lexer;
-    private Token current;
-    private Token peek;
+    // How tightly each infix operator binds, from loosest to tightest. Tokens
+    // that are not infix operators are left at zero and end an expression.
+    private static final int ASSIGNMENT = 1;
+    private static final int OR = 2;
+    private static final int AND = 3;
+    private static final int EQUALITY = 4;
+    private static final int COMPARISON = 5;
+    private static final int TERM = 6;
+    private static final int FACTOR = 7;
+    private static final int UNARY = 8;
+    private static final int CALL = 9;
+
+    private static final int[] POWERS = new int[TokenType.values().length];
+
+    static {
+        bind(ASSIGNMENT, TokenType.EQUAL);
+        bind(OR, TokenType.OR);
+        bind(AND, TokenType.AND);
+        bind(EQUALITY, TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL);
+        bind(COMPARISON,
+                TokenType.MORE, TokenType.MORE_EQUAL,
+                TokenType.LESS, TokenType.LESS_EQUAL);
+        bind(TERM, TokenType.MINUS, TokenType.PLUS);
+        bind(FACTOR, TokenType.SLASH, TokenType.STAR);
+        bind(CALL, TokenType.LPAREN, TokenType.DOT);
+    }
 
-    private List<String> errors;
+    private static void bind(int power, TokenType... types) {
+        for (TokenType type : types) {
+            POWERS[type.ordinal()] = power;
+        }
+    }
 
-    Parser(String source) {
-        this.lexer = new Lexer(source, (String msg) -> this.errors.add(msg));
-        this.current = this.lexer.next();
-        this.peek = this.lexer.next();
+    private final TokenStream tokens;
+    private int current = 0;
+
+    private final List<String> errors = new ArrayList<>();
+
+    // Whether to skip the bodies of top-level functions, and how many blocks deep we are.
+    private boolean lazy = false;
+    private int depth = 0;
+
+    Parser(CharSequence source) {
+        this(source, false);
+    }
+
+    // A streaming parser lexes as it goes and keeps only the tokens of the
+    // declaration in progress, to be read with hasNext() and next().
+    Parser(CharSequence source, boolean streaming) {
+        Lexer lexer = new Lexer(source, (String msg) -> this.errors.add(msg));
+        this.tokens = streaming ? lexer.stream() : lexer.tokenize();
+    }
+
+    Parser(TokenStream tokens) {
+        this.tokens = tokens;
+    }
+
+    // Leaves the bodies of top-level functions to be parsed when first called.
+    void parseBodiesLazily() {
+        this.lazy = true;
+    }
+
+    // The body of a function skipped by a lazy parse, starting after its '{'.
+    List<Stmt> body(int start) {
+        this.current = start;
+        try {
+            return this.block();
+        } catch (ParseError error) {
+            return null;
+        }
     }
 
 /* Statements 8.1
@@ -41,11 +104,23 @@ class Parser {
         return statements;
     }
 
+    @Override
+    public boolean hasNext() {
+        return !this.isAtEnd();
+    }
+
+    // The next top-level declaration, or null if it has a syntax error.
+    @Override
+    public Stmt next() {
+        this.tokens.release(this.current - 1);
+        return this.declaration();
+    }
+
     private Expr expression() {
 /* Assignment 8.4
         return this.equality();
 */
-        return this.assignment();
+        return this.expression(ASSIGNMENT);
     }
 
     private Stmt declaration() {
@@ -253,6 +328,16 @@ class Parser {
                 TokenType.LBRACE, "Expect '{' before " + kind
                         + " body."
         );
+
+        // Only top-level functions resolve the same later, with nothing but
+        // globals around them.
+        if (this.lazy && this.depth == 0 && kind.equals("function")) {
+            Stmt.Function function = new Stmt.Function(name, parameters, null);
+            function.lazy = new LazyBody(this.tokens, this.current);
+            this.skipBlock();
+            return function;
+        }
+
         List<Stmt> body = this.block();
         return new Stmt.Function(name, parameters, body);
     }
@@ -260,105 +345,200 @@ class Parser {
     private List<Stmt> block() {
         List<Stmt> statements = new ArrayList<>();
 
-        while (!this.check(TokenType.RBRACE) && !this.isAtEnd()) {
-            statements.add(this.declaration());
+        this.depth++;
+        try {
+            while (!this.check(TokenType.RBRACE) && !this.isAtEnd()) {
+                statements.add(this.declaration());
+            }
+        } finally {
+            this.depth--;
         }
 
         this.verify(TokenType.RBRACE, "Expect '}' after block.");
         return statements;
     }
 
-    private Expr assignment() {
-/* Logical Operators 9.3
-        Expr expr = this.equality();
-*/
-        Expr expr = this.or();
-
-        if (this.match(TokenType.EQUAL)) {
-            Token equals = this.previous();
-            Expr value = this.assignment();
-
-            if (expr instanceof Expr.Variable var) {
-                return new Expr.Assign(var.name, value);
-            } else if (expr instanceof Expr.Get get) {
-                return new Expr.Set(get.object, get.name, value);
+    // Brace-matches a function body, starting after its '{', and checks the
+    // structure of its statements on the way: brackets pair up, nothing but a for
+    // clause has a ';' inside parentheses, and each statement keyword follows the
+    // end of a statement. Only the first such error is reported, since after it
+    // the brackets cannot be trusted to pair up.
+    private void skipBlock() {
+        // Open brackets, innermost first. A for clause's parenthesis is FOR.
+        Deque<TokenType> open = new ArrayDeque<>();
+        open.push(TokenType.LBRACE);
+        TokenType previous = TokenType.LBRACE;
+        boolean checking = true;
+
+        for (int depth = 1; depth > 0; this.proceed()) {
+            TokenType type = this.tokens.type(this.current);
+            switch (type) {
+                case LBRACE -> depth++;
+                case RBRACE -> depth--;
+                case ILLEGAL -> this.error(this.peek(), "Expect expression.");
+                case EOF -> throw this.panic(this.peek(), "Expect '}' after block.");
             }
 
-            this.error(equals, "Invalid assignment target.");
+            if (checking) {
+                String error = this.structure(open, previous, type);
+                if (error != null) {
+                    this.error(this.peek(), error);
+                    checking = false;
+                }
+            }
+            previous = type;
         }
-
-        return expr;
     }
 
-    private Expr or() {
-        return this.infix(this::and, Expr.Logical::new, TokenType.OR);
-    }
+    // The error in type following previous inside the open brackets, if any.
+    private String structure(Deque<TokenType> open, TokenType previous, TokenType type) {
+        boolean inParentheses = open.peek() != TokenType.LBRACE;
 
-    private Expr and() {
-        return this.infix(this::equality, Expr.Logical::new, TokenType.AND);
-    }
+        switch (type) {
+            case LPAREN -> open.push(previous == TokenType.FOR ? TokenType.FOR : TokenType.LPAREN);
+            case LBRACE -> {
+                if (inParentheses) return "Expect ')' after expression.";
+                open.push(TokenType.LBRACE);
+            }
+            case RPAREN, RBRACE -> {
+                if (inParentheses != (type == TokenType.RPAREN)) {
+                    return inParentheses ? "Expect ')' after expression." : "Expect ';' after expression.";
+                }
+                open.pop();
+            }
+            case SEMICOLON -> {
+                if (open.peek() == TokenType.LPAREN) return "Expect ')' after expression.";
+            }
+            case VAR, FN, CLASS, PRINT, RETURN, IF, ELSE, WHILE, FOR -> {
+                // The initializer of a for clause is the one statement in parentheses.
+                if (type == TokenType.VAR && previous == TokenType.LPAREN && open.peek() == TokenType.FOR) {
+                    return null;
+                }
+                if (inParentheses) return "Expect expression.";
 
-    private Expr equality() {
-        return this.infix(
-                this::comparison, Expr.Binary::new,
-                TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL
-        );
-    }
+                switch (previous) {
+                    case LBRACE, RBRACE, SEMICOLON, RPAREN, ELSE -> {}
+                    default -> {
+                        return "Expect ';' after expression.";
+                    }
+                }
+            }
+        }
 
-    private Expr comparison() {
-        return this.infix(
-                this::term, Expr.Binary::new,
-                TokenType.MORE, TokenType.MORE_EQUAL,
-                TokenType.LESS, TokenType.LESS_EQUAL
-        );
+        return null;
     }
 
-    private Expr term() {
-        return this.infix(
-                this::factor, Expr.Binary::new, TokenType.MINUS, TokenType.PLUS
-        );
-    }
+    // Parses operators that bind at least as tightly as power. Each operator's
+    // right operand binds one step tighter, except assignment's, which makes
+    // every binary operator left-associative and assignment right-associative.
+    private Expr expression(int power) {
+        Expr expr = this.prefix();
 
-    private Expr factor() {
-        return this.infix(
-                this::unary, Expr.Binary::new, TokenType.SLASH, TokenType.STAR
-        );
-    }
+        while (POWERS[this.tokens.type(this.current).ordinal()] >= power) {
+            expr = this.infix(expr);
+        }
 
-    @FunctionalInterface
-    interface Production {
-        Expr generate();
+        return expr;
     }
 
-    @FunctionalInterface
-    interface Infix {
-        @SuppressWarnings("unused")
-        Expr build(Expr left, Token operator, Expr right);
+    private Expr prefix() {
+        return switch (this.tokens.type(this.current)) {
+            case FALSE -> {
+                this.proceed();
+                yield new Expr.Literal(false);
+            }
+            case TRUE -> {
+                this.proceed();
+                yield new Expr.Literal(true);
+            }
+            case NIL -> {
+                this.proceed();
+                yield new Expr.Literal(null);
+            }
+            case NUMBER -> {
+                this.proceed();
+                yield new Expr.Literal(this.tokens.literal(this.current - 1));
+            }
+            case STRING -> {
+                this.proceed();
+                yield new Expr.Literal(this.previous().lexeme());
+            }
+            case SUPER -> {
+                this.proceed();
+                Token keyword = this.previous();
+                this.verify(TokenType.DOT, "Expect '.' after 'super'.");
+                Token method = this.consume(
+                        TokenType.IDENT,
+                        "Expect superclass method name."
+                );
+                yield new Expr.Super(keyword, method);
+            }
+            case THIS -> {
+                this.proceed();
+                yield new Expr.This(this.previous());
+            }
+            case IDENT -> {
+                this.proceed();
+                yield new Expr.Variable(this.previous());
+            }
+            case LPAREN -> {
+                this.proceed();
+                Expr expr = this.expression();
+                this.verify(
+                        TokenType.RPAREN,
+                        "Expect ')' after expression."
+                );
+                yield new Expr.Grouping(expr);
+            }
+            case BANG, MINUS -> {
+                this.proceed();
+                Token operator = this.previous();
+                Expr right = this.expression(UNARY);
+                yield new Expr.Unary(operator, right);
+            }
+            default -> throw this.panic(this.peek(), "Expect expression.");
+        };
     }
 
-    private Expr infix(Production next, Infix infix, TokenType... matches) {
-        Expr expr = next.generate();
-
-        while (this.match(matches)) {
-            Token operator = this.previous();
-            Expr right = next.generate();
-            expr = infix.build(expr, operator, right);
-        }
+    private Expr infix(Expr left) {
+        TokenType type = this.tokens.type(this.current);
+        this.proceed();
 
-        return expr;
+        return switch (type) {
+            case EQUAL -> this.assignment(left);
+            case LPAREN -> this.finishCall(left);
+            case DOT -> {
+                Token name = this.consume(
+                        TokenType.IDENT,
+                        "Expect property name after '.'."
+                );
+                yield new Expr.Get(left, name);
+            }
+            case OR, AND -> {
+                Token operator = this.previous();
+                Expr right = this.expression(POWERS[type.ordinal()] + 1);
+                yield new Expr.Logical(left, operator, right);
+            }
+            default -> {
+                Token operator = this.previous();
+                Expr right = this.expression(POWERS[type.ordinal()] + 1);
+                yield new Expr.Binary(left, operator, right);
+            }
+        };
     }
 
-    private Expr unary() {
-        if (this.match(TokenType.BANG, TokenType.MINUS)) {
-            Token operator = this.previous();
-            Expr right = this.unary();
-            return new Expr.Unary(operator, right);
+    private Expr assignment(Expr target) {
+        Token equals = this.previous();
+        Expr value = this.expression(ASSIGNMENT);
+
+        if (target instanceof Expr.Variable var) {
+            return new Expr.Assign(var.name, value);
+        } else if (target instanceof Expr.Get get) {
+            return new Expr.Set(get.object, get.name, value);
         }
 
-/* Function Calls 10.1
-        return this.primary();
-*/
-        return this.call();
+        this.error(equals, "Invalid assignment target.");
+        return target;
     }
 
     private Expr finishCall(Expr callee) {
@@ -382,72 +562,11 @@ class Parser {
         return new Expr.Call(callee, paren, arguments);
     }
 
-    private Expr call() {
-        Expr expr = this.primary();
+    private boolean match(TokenType type) {
+        if (!this.check(type)) return false;
 
-        while (true) {
-            if (this.match(TokenType.LPAREN)) {
-                expr = this.finishCall(expr);
-            } else if (this.match(TokenType.DOT)) {
-                Token name = this.consume(
-                        TokenType.IDENT,
-                        "Expect property name after '.'."
-                );
-                expr = new Expr.Get(expr, name);
-            } else {
-                break;
-            }
-        }
-
-        return expr;
-    }
-
-    private Expr primary() {
-        if (this.match(TokenType.FALSE)) return new Expr.Literal(false);
-        if (this.match(TokenType.TRUE)) return new Expr.Literal(true);
-        if (this.match(TokenType.NIL)) return new Expr.Literal(null);
-
-        if (this.match(TokenType.NUMBER, TokenType.STRING)) {
-            return new Expr.Literal(this.previous().lexeme());
-        }
-
-        if (this.match(TokenType.SUPER)) {
-            Token keyword = this.previous();
-            this.verify(TokenType.DOT, "Expect '.' after 'super'.");
-            Token method = this.consume(
-                    TokenType.IDENT,
-                    "Expect superclass method name."
-            );
-            return new Expr.Super(keyword, method);
-        }
-
-        if (this.match(TokenType.THIS)) return new Expr.This(this.previous());
-
-        if (this.match(TokenType.IDENT)) {
-            return new Expr.Variable(this.previous());
-        }
-
-        if (match(TokenType.LPAREN)) {
-            Expr expr = this.expression();
-            this.verify(
-                    TokenType.RPAREN,
-                    "Expect ')' after expression."
-            );
-            return new Expr.Grouping(expr);
-        }
-
-        throw this.panic(this.peek(), "Expect expression.");
-    }
-
-    private boolean match(TokenType... types) {
-        for (TokenType type : types) {
-            if (this.check(type)) {
-                this.proceed();
-                return true;
-            }
-        }
-
-        return false;
+        this.proceed();
+        return true;
     }
 
     private void verify(TokenType type, String message) {
@@ -466,29 +585,28 @@ class Parser {
 
     private boolean check(TokenType type) {
         if (this.isAtEnd()) return false;
-        return this.peek().type() == type;
+        return this.tokens.type(this.current) == type;
     }
 
     private void proceed() {
-        if (!this.isAtEnd());
+        if (!this.isAtEnd()) this.tokens.reach(++this.current);
     }
 
     private Token advance() {
-        if (!this.isAtEnd())
-            return this.previous();
-        return null;
+        this.proceed();
+        return this.previous();
     }
 
     private boolean isAtEnd() {
-        return this.peek().type() == TokenType.EOF;
+        return this.tokens.type(this.current) == TokenType.EOF;
     }
 
     private Token peek() {
-        return null;
+        return this.tokens.token(this.current);
     }
 
     private Token previous() {
-        return null;
+        return this.tokens.token(this.current - 1);
     }
 
     private void error(Token token, String message) {
@@ -504,9 +622,9 @@ class Parser {
         this.proceed();
 
         while (!this.isAtEnd()) {
-            if (this.previous().type() == TokenType.SEMICOLON) return;
+            if (this.tokens.type(this.current - 1) == TokenType.SEMICOLON) return;
 
-            switch (this.peek().type()) {
+            switch (this.tokens.type(this.current)) {
                 case CLASS, FN, VAR, FOR, IF, WHILE, PRINT, RETURN -> {
                     return;
                 }
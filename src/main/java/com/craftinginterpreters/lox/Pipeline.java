@@ -0,0 +1,175 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+
+import static com.craftinginterpreters.lox.Token.TokenType;
+
+// The top-level declarations of a script, lexed and parsed on threads of their
+// own while the caller runs the ones before. Each stage hands its work on through
+// a bounded queue and waits when the next stage falls behind.
+final class Pipeline implements Iterator<Stmt>, AutoCloseable {
+    // Tokens per chunk and declarations per batch, handed on at once to keep
+    // the queues off the hot path.
+    private static final int CHUNK = 4096;
+    private static final int BATCH = 64;
+
+    // A parsed declaration, with the errors reported while lexing and parsing it.
+    private record Declaration(Stmt statement, List<String> errors, boolean last) {}
+
+    private interface Stage {
+        void run() throws InterruptedException;
+    }
+
+    private final BlockingQueue<TokenStream> chunks = new ArrayBlockingQueue<>(16);
+    private final BlockingQueue<List<Declaration>> batches = new ArrayBlockingQueue<>(16);
+    private final Thread lexer;
+    private final Thread parser;
+    private volatile Throwable failure = null;
+    private List<Declaration> batch = List.of();
+    private int index = 0;
+    private Declaration next = null;
+
+    Pipeline(CharSequence source) {
+        this.lexer = this.thread("lox-lexer", () -> this.lex(source));
+        this.parser = this.thread("lox-parser", () -> this.parse(source));
+        this.lexer.start();
+        this.parser.start();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.next == null) {
+            if (this.index == this.batch.size()) {
+                try {
+                    this.batch = this.batches.take();
+                    this.index = 0;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException();
+                }
+            }
+            this.next = this.batch.get(this.index++);
+
+            if (this.failure instanceof RuntimeException e) throw e;
+            if (this.failure instanceof Error e) throw e;
+
+            // Errors are printed here, so they come out in order with the output.
+            for (String error : this.next.errors()) {
+                Lox.report(error);
+            }
+        }
+
+        return !this.next.last();
+    }
+
+    @Override
+    public Stmt next() {
+        if (!this.hasNext()) throw new NoSuchElementException();
+
+        Stmt statement = this.next.statement();
+        this.next = null;
+        return statement;
+    }
+
+    // Stops both stages and waits for them, since they read the source.
+    @Override
+    public void close() {
+        this.lexer.interrupt();
+        this.parser.interrupt();
+
+        boolean interrupted = false;
+        for (Thread thread : new Thread[]{this.lexer, this.parser}) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void lex(CharSequence source) throws InterruptedException {
+        List<String> errors = new ArrayList<>();
+        Lox.defer(errors);
+
+        Lexer lexer = new Lexer(source, null);
+        TokenType type;
+        do {
+            TokenStream chunk = new TokenStream(source, CHUNK);
+            do {
+                type = lexer.lex(chunk);
+                for (String error : errors) {
+                    chunk.defer(error);
+                }
+                errors.clear();
+            } while (type != TokenType.EOF && chunk.size() < CHUNK);
+
+            this.chunks.put(chunk);
+        } while (type != TokenType.EOF);
+    }
+
+    private void parse(CharSequence source) throws InterruptedException {
+        List<String> errors = new ArrayList<>();
+        Lox.defer(errors);
+
+        Parser parser = new Parser(new TokenStream(source, this::take));
+        List<Declaration> batch = new ArrayList<>(BATCH);
+        while (parser.hasNext()) {
+            Stmt statement = parser.next();
+            batch.add(new Declaration(statement, List.copyOf(errors), false));
+            errors.clear();
+
+            if (batch.size() == BATCH) {
+                this.batches.put(batch);
+                batch = new ArrayList<>(BATCH);
+            }
+        }
+
+        batch.add(new Declaration(null, List.copyOf(errors), true));
+        this.batches.put(batch);
+    }
+
+    private TokenType take(TokenStream tokens) {
+        try {
+            return tokens.append(this.chunks.take());
+        } catch (InterruptedException e) {
+            throw new CancellationException();
+        }
+    }
+
+    private Thread thread(String name, Stage stage) {
+        Thread thread = new Thread(() -> {
+            try {
+                stage.run();
+            } catch (InterruptedException | CancellationException e) {
+                // The pipeline was closed.
+            } catch (Throwable e) {
+                this.fail(e);
+            }
+        }, name);
+
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // Stops the other stage and wakes the caller to rethrow the failure.
+    private void fail(Throwable failure) {
+        this.failure = failure;
+        Thread other = Thread.currentThread() == this.lexer ? this.parser : this.lexer;
+        other.interrupt();
+
+        try {
+            this.batches.put(List.of(new Declaration(null, List.of(), true)));
+        } catch (InterruptedException e) {
+            // The pipeline was closed.
+        }
+    }
+}
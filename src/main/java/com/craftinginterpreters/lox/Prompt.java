@@ -0,0 +1,39 @@
+package com.craftinginterpreters.lox;
+
+import dev.digitalcodex.lemur.CharacterEncoding;
+import dev.digitalcodex.lemur.CharacterStream;
+import dev.digitalcodex.lemur.DecodingStream;
+import dev.digitalcodex.lemur.lexer.Lexeme;
+import dev.digitalcodex.lemur.lexer.Lexer;
+import dev.digitalcodex.lemur.scanner.Scanner;
+
+import java.io.InputStream;
+
+// Lines typed at the prompt, decoded as UTF-8 through lemur. Each line is one
+// lexeme. Decoding stops at what has arrived, so a line is returned as soon as
+// it is typed, even when more input would fill the buffers.
+final class Prompt {
+    private final Lexer lexer;
+
+    Prompt(InputStream in) {
+        this.lexer = new Lexer(new Scanner(new DecodingStream(in, CharacterEncoding.UTF_8)));
+    }
+
+    // The next line without its terminator, or null at the end of input.
+    String readLine() {
+        if (this.lexer.isAtEnd()) return null;
+
+        int c;
+        while ((c = this.lexer.peek()) != CharacterStream.EOF && c != '\n') {
+            this.lexer.advance();
+        }
+        Lexeme line = this.lexer.emit();
+
+        // The terminator is not part of the line.
+        this.lexer.match('\n');
+        this.lexer.skip();
+
+        String text = line.text();
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+}
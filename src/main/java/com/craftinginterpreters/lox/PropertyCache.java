@@ -0,0 +1,50 @@
+package com.craftinginterpreters.lox;
+
+final class PropertyCache {
+    // Past this many receiver kinds the site is megamorphic and stops caching.
+    private static final int LIMIT = 4;
+
+    private final Shape[] shapes = new Shape[LIMIT];
+    private final LoxClass[] classes = new LoxClass[LIMIT];
+    private final int[] slots = new int[LIMIT];
+    private final Shape[] transitions = new Shape[LIMIT];
+    private final LoxFunction[] methods = new LoxFunction[LIMIT];
+    private int count = 0;
+    private boolean megamorphic = false;
+
+    int find(Shape shape, LoxClass klass) {
+        for (int i = 0; i < this.count; i++) {
+            if (this.shapes[i] == shape && this.classes[i] == klass) return i;
+        }
+
+        return -1;
+    }
+
+    int slot(int entry) {
+        return this.slots[entry];
+    }
+
+    Shape transition(int entry) {
+        return this.transitions[entry];
+    }
+
+    LoxFunction method(int entry) {
+        return this.methods[entry];
+    }
+
+    void add(Shape shape, LoxClass klass, int slot, Shape transition, LoxFunction method) {
+        if (this.megamorphic) return;
+        if (this.count == LIMIT) {
+            this.megamorphic = true;
+            this.count = 0;
+            return;
+        }
+
+        this.shapes[this.count] = shape;
+        this.classes[this.count] = klass;
+        this.slots[this.count] = slot;
+        this.transitions[this.count] = transition;
+        this.methods[this.count] = method;
+        this.count++;
+    }
+}
@@ -19,15 +19,20 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
         SUBCLASS
     }
 
-    private final Interpreter  interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
-    private FunctionType currentFunction = FunctionType.NONE;
-    private ClassType currentClass = ClassType.NONE;
+    private static class Local {
+        final int slot;
+        boolean defined;
 
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+        Local(int slot, boolean defined) {
+            this.slot = slot;
+            this.defined = defined;
+        }
     }
 
+    private final Stack<Map<Symbol, Local>> scopes = new Stack<>();
+    private FunctionType currentFunction = FunctionType.NONE;
+    private ClassType currentClass = ClassType.NONE;
+
     void resolve(List<Stmt> statements) {
         for (Stmt statement : statements) {
             this.resolve(statement);
@@ -38,7 +43,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
     public void visitBlockStmt(Stmt.Block stmt) {
         this.beginScope();
         this.resolve(stmt.statements);
-        this.endScope();
+        stmt.frameSize = this.endScope();
     }
 
     @Override
@@ -46,10 +51,10 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
         ClassType enclosingClass = this.currentClass;
         this.currentClass = ClassType.CLASS;
 
-        this.declare(stmt.name);
+        stmt.slot = this.declare(stmt.name);
         this.define(stmt.name);
 
-        if (stmt.superclass != null && stmt.name.lexeme().equals(stmt.superclass.name.lexeme())) {
+        if (stmt.superclass != null && stmt.name.symbol() == stmt.superclass.name.symbol()) {
             Lox.error(
                     stmt.superclass.name,
                     "A class can't inherit from itself."
@@ -63,23 +68,18 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
 
         if (stmt.superclass != null) {
             this.beginScope();
-            this.scopes.peek().put("super", true);
+            this.declare(Symbol.SUPER, true);
         }
 
-        this.beginScope();
-        this.scopes.peek().put("this", true);
-
         for (Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
-            if (method.name.lexeme().equals("init")) {
+            if (method.name.symbol() == Symbol.INIT) {
                 declaration = FunctionType.INITIALIZER;
             }
 
             this.resolveFunction(method, declaration);
         }
 
-        this.endScope();
-
         if (stmt.superclass != null) this.endScope();
 
         this.currentClass = enclosingClass;
@@ -92,10 +92,16 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
 
     @Override
     public void visitFunctionStmt(Stmt.Function stmt) {
-        this.declare(stmt.name);
+        stmt.slot = this.declare(stmt.name);
         this.define(stmt.name);
 
-        this.resolveFunction(stmt, FunctionType.FUNCTION);
+        // A body skipped by a lazy parse is resolved when it is parsed.
+        if (stmt.body != null) this.resolveFunction(stmt, FunctionType.FUNCTION);
+    }
+
+    // Resolves a top-level function whose body was parsed late.
+    void resolveBody(Stmt.Function function) {
+        this.resolveFunction(function, FunctionType.FUNCTION);
     }
 
     @Override
@@ -132,7 +138,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
 
     @Override
     public void visitVarStmt(Stmt.Var stmt) {
-        this.declare(stmt.name);
+        stmt.slot = this.declare(stmt.name);
         if (stmt.initializer != null) {
             this.resolve(stmt.initializer);
         }
@@ -148,7 +154,8 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         this.resolve(expr.value);
-        this.resolveLocal(expr, expr.name);
+        expr.depth = this.resolveLocal(expr.name);
+        if (expr.depth >= 0) expr.slot = this.slot(expr.name, expr.depth);
         return null;
     }
 
@@ -215,7 +222,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
             );
         }
 
-        this.resolveLocal(expr, expr.keyword);
+        expr.depth = this.resolveLocal(expr.keyword);
         return null;
     }
 
@@ -228,7 +235,8 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
             );
         }
 
-        this.resolveLocal(expr, expr.keyword);
+        expr.depth = this.resolveLocal(expr.keyword);
+        if (expr.depth >= 0) expr.slot = this.slot(expr.keyword, expr.depth);
         return null;
     }
 
@@ -240,14 +248,19 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
-        if (!this.scopes.isEmpty() && this.scopes.peek().get(expr.name.lexeme()) == Boolean.FALSE) {
-            Lox.error(
-                    expr.name,
-                    "Can't read local variable in its own initializer."
-            );
+        if (!this.scopes.isEmpty()) {
+            Local local = this.scopes.peek().get(expr.name.symbol());
+            if (local != null && !local.defined) {
+                Lox.error(
+                        expr.name,
+                        "Can't read local variable in its own initializer."
+                );
+            }
         }
 
-        this.resolveLocal(expr, expr.name);
+
+        expr.depth = this.resolveLocal(expr.name);
+        if (expr.depth >= 0) expr.slot = this.slot(expr.name, expr.depth);
         return null;
     }
 
@@ -263,12 +276,17 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
         FunctionType enclosingFunction = this.currentFunction;
         this.currentFunction = type;
         this.beginScope();
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            // The receiver lives in the method's own frame, ahead of the parameters.
+            this.declare(Symbol.THIS, true);
+            function.isMethod = true;
+        }
         for (Token param : function.params) {
             this.declare(param);
             this.define(param);
         }
         this.resolve(function.body);
-        this.endScope();
+        function.frameSize = this.endScope();
         this.currentFunction = enclosingFunction;
     }
 
@@ -276,37 +294,50 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
         this.scopes.push(new HashMap<>());
     }
 
-    private void endScope() {
-        this.scopes.pop();
+    private int endScope() {
+        return this.scopes.pop().size();
     }
 
-    private void declare(Token name) {
-        if (this.scopes.isEmpty()) return;
+    private int declare(Token name) {
+        if (this.scopes.isEmpty()) return -1;
 
-        Map<String, Boolean> scope = this.scopes.peek();
-        if (scope.containsKey(name.lexeme())) {
+        Map<Symbol, Local> scope = this.scopes.peek();
+        if (scope.containsKey(name.symbol())) {
             Lox.error(
                     name,
                     "Already a variable with this name in this scope."
             );
+            return scope.get(name.symbol()).slot;
         }
 
-        scope.put(name.lexeme(), false);
+        return this.declare(name.symbol(), false);
+    }
+
+    private int declare(Symbol name, boolean defined) {
+        Map<Symbol, Local> scope = this.scopes.peek();
+        Local local = new Local(scope.size(), defined);
+        scope.put(name, local);
+        return local.slot;
     }
 
     private void define(Token name) {
         if (this.scopes.isEmpty()) return;
-        this.scopes.peek().put(name.lexeme(), true);
+        this.scopes.peek().get(name.symbol()).defined = true;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
+    private int resolveLocal(Token name) {
         for (int i = this.scopes.size() - 1; i >= 0; i--) {
-            if (this.scopes.get(i).containsKey(name.lexeme())) {
-                this.interpreter.resolve(
-                        expr, this.scopes.size() - 1 - i
-                );
-                return;
+            if (this.scopes.get(i).containsKey(name.symbol())) {
+                return this.scopes.size() - 1 - i;
             }
         }
+
+        // Not found. Assume it is global.
+        return -1;
+    }
+
+    private int slot(Token name, int depth) {
+        return this.scopes.get(this.scopes.size() - 1 - depth)
+                .get(name.symbol()).slot;
     }
 }
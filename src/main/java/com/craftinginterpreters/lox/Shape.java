@@ -0,0 +1,38 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class Shape {
+    // Every instance starts out with no fields and shares this shape.
+    static final Shape EMPTY = new Shape(new HashMap<>());
+
+    private final Map<Symbol, Integer> slots;
+    private final Map<Symbol, Shape> transitions = new HashMap<>();
+
+    private Shape(Map<Symbol, Integer> slots) {
+        this.slots = slots;
+    }
+
+    int size() {
+        return this.slots.size();
+    }
+
+    int lookup(Symbol name) {
+        Integer slot = this.slots.get(name);
+        if (slot == null) return -1;
+        return slot;
+    }
+
+    Shape with(Symbol name) {
+        Shape next = this.transitions.get(name);
+        if (next == null) {
+            Map<Symbol, Integer> slots = new HashMap<>(this.slots);
+            slots.put(name, this.slots.size());
+            next = new Shape(slots);
+            this.transitions.put(name, next);
+        }
+
+        return next;
+    }
+}
@@ -25,6 +25,7 @@ abstract class Stmt {
         }
 
         final List<Stmt> statements;
+        int frameSize;
     }
     static class Class extends Stmt {
         Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
@@ -41,6 +42,7 @@ abstract class Stmt {
         final Token name;
         final Expr.Variable superclass;
         final List<Stmt.Function> methods;
+        int slot;
     }
     static class Expression extends Stmt {
         Expression(Expr expression) {
@@ -68,7 +70,11 @@ abstract class Stmt {
 
         final Token name;
         final List<Token> params;
-        final List<Stmt> body;
+        List<Stmt> body;
+        LazyBody lazy;
+        int slot;
+        int frameSize;
+        boolean isMethod;
     }
     static class If extends Stmt {
         If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
@@ -125,6 +131,7 @@ abstract class Stmt {
 
         final Token name;
         final Expr initializer;
+        int slot;
     }
     static class While extends Stmt {
         While(Expr condition, Stmt body) {
@@ -0,0 +1,108 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// A name interned once for the whole process. Each distinct name has exactly one
+// Symbol, so symbols compare and hash by identity and index tables by id.
+final class Symbol {
+    // Open addressing on the characters, so the lexer can intern a slice of the
+    // source without copying it out first. Lookups of existing symbols read the
+    // table without the lock, so lexers on several threads do not contend.
+    private static volatile Symbol[] table = new Symbol[1024];
+    private static int count = 0;
+
+    static final Symbol THIS = Symbol.of("this");
+    static final Symbol SUPER = Symbol.of("super");
+    static final Symbol INIT = Symbol.of("init");
+
+    final int id;
+    final String name;
+    private final int hash;
+
+    private Symbol(int id, String name, int hash) {
+        this.id = id;
+        this.name = name;
+        this.hash = hash;
+    }
+
+    static Symbol of(String name) {
+        return Symbol.of(name, 0, name.length());
+    }
+
+    static Symbol of(CharSequence source, int start, int length) {
+        int hash = Symbol.hash(source, start, length);
+        // Symbols are immutable, so one seen here is complete. One not seen yet may
+        // still be on its way in, so a miss is checked again under the lock.
+        Symbol symbol = Symbol.find(table, source, start, length, hash);
+        if (symbol != null) return symbol;
+
+        return Symbol.intern(source, start, length, hash);
+    }
+
+    private static Symbol find(Symbol[] table, CharSequence source, int start, int length, int hash) {
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Symbol symbol = table[i];
+            if (symbol == null) return null;
+            if (symbol.hash == hash && symbol.name.length() == length
+                    && Symbol.matches(source, start, symbol.name)) {
+                return symbol;
+            }
+        }
+    }
+
+    private static synchronized Symbol intern(CharSequence source, int start, int length, int hash) {
+        Symbol symbol = Symbol.find(table, source, start, length, hash);
+        if (symbol != null) return symbol;
+
+        symbol = new Symbol(count++, source.subSequence(start, start + length).toString(), hash);
+        if (count * 2 > table.length) Symbol.grow();
+        Symbol.insert(symbol);
+        return symbol;
+    }
+
+    // How many symbols exist, and so the bound on their ids.
+    static synchronized int count() {
+        return count;
+    }
+
+    private static int hash(CharSequence source, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(CharSequence source, int start, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (source.charAt(start + i) != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static void insert(Symbol symbol) {
+        Symbol.insert(table, symbol);
+    }
+
+    private static void insert(Symbol[] table, Symbol symbol) {
+        int mask = table.length - 1;
+        int i = symbol.hash & mask;
+        while (table[i] != null) i = (i + 1) & mask;
+        table[i] = symbol;
+    }
+
+    // Fills the larger table before publishing it, so readers never see it part-built.
+    private static void grow() {
+        Symbol[] larger = new Symbol[table.length * 2];
+        for (Symbol symbol : table) {
+            if (symbol != null) Symbol.insert(larger, symbol);
+        }
+        table = larger;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
@@ -1,6 +1,7 @@
 package com.craftinginterpreters.lox;
 
-public record Token(TokenType type, int start, int length, int line, String lexeme) {
+// A view of the source text; the lexeme is only copied out when asked for.
+public final class Token {
     enum TokenType {
         ILLEGAL("ILLEGAL"),
 
@@ -37,13 +38,90 @@ public record Token(TokenType type, int start, int length, int line, String lexe
         }
     }
 
+    private final TokenType type;
+    private final int start;
+    private final int length;
+    private final int line;
+    // The value of a NUMBER token, or the Symbol of an IDENT, made once by the lexer.
+    private final Object literal;
+
+    private final CharSequence source;
+    private String lexeme;
+    private Symbol symbol;
+
+    Token(TokenType type, CharSequence source, int start, int length, int line, Object literal) {
+        this.type = type;
+        this.source = source;
+        this.start = start;
+        this.length = length;
+        this.line = line;
+        this.literal = literal;
+    }
+
+    public Token(TokenType type, int start, int length, int line, String lexeme) {
+        this(type, start, length, line, lexeme, null);
+    }
+
+    public Token(TokenType type, int start, int length, int line, String lexeme, Object literal) {
+        this(type, null, start, length, line, literal);
+        this.lexeme = lexeme;
+    }
+
+    public TokenType type() {
+        return this.type;
+    }
+
+    public int start() {
+        return this.start;
+    }
+
+    public int length() {
+        return this.length;
+    }
+
+    public int line() {
+        return this.line;
+    }
+
+    public Object literal() {
+        return this.literal;
+    }
+
+    public String lexeme() {
+        if (this.lexeme == null) {
+            this.lexeme = switch (this.type) {
+                // Every occurrence of a name shares its symbol's string.
+                case IDENT -> this.symbol().name;
+                case NUMBER -> this.source.subSequence(this.start, this.start + this.length).toString();
+                // Without the surrounding quotes.
+                case STRING -> this.source.subSequence(this.start + 1, this.start + this.length - 1).toString();
+                default -> this.type.lexeme();
+            };
+        }
+
+        return this.lexeme;
+    }
+
+    // The interned name of an identifier, or of a keyword such as "this".
+    Symbol symbol() {
+        if (this.literal instanceof Symbol symbol) return symbol;
+
+        if (this.symbol == null) {
+            String name = this.lexeme != null ? this.lexeme
+                    : this.source.subSequence(this.start, this.start + this.length).toString();
+            this.symbol = Symbol.of(name);
+        }
+        return this.symbol;
+    }
+
     @Override
     public String toString() {
         return "Token{" +
                 "type:" + this.type +
                 ", start:" + this.start +
                 ", length:" + this.length +
-                ", lexeme:" + this.lexeme +
+                ", lexeme:" + this.lexeme() +
+                ", literal:" + this.literal +
                 ", line:" + this.line +
                 "}";
     }
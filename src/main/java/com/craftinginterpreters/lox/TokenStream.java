@@ -0,0 +1,177 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import static com.craftinginterpreters.lox.Token.TokenType;
+
+// Every token of a source, packed into parallel arrays and read by index. A
+// stream filled on demand holds only the tokens from the last release onwards.
+final class TokenStream {
+    private static final TokenType[] TYPES = TokenType.values();
+    // The most tokens a stream makes room for before it has any. Past this it
+    // grows as tokens arrive, so a large source costs only what it holds.
+    private static final int MAX_INITIAL_CAPACITY = 1 << 16;
+
+    // Where a stream filled on demand gets its tokens.
+    interface Supply {
+        // Adds one or more tokens and returns the type of the last.
+        TokenType fill(TokenStream tokens);
+    }
+
+    // An error found while lexing, reported once the parser reaches its token.
+    private record Deferred(int index, String error) {}
+
+    private final CharSequence source;
+    // Supplies further tokens on demand, or null once the stream is complete.
+    private Supply supply;
+    private final ArrayDeque<Deferred> errors = new ArrayDeque<>();
+    // The index of the first token still held.
+    private int base = 0;
+
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    // Number values, and the text of tokens that is not in the source.
+    private Object[] literals;
+    private int size = 0;
+
+    TokenStream(CharSequence source) {
+        this(source, TokenStream.capacity(source.length()));
+    }
+
+    TokenStream(CharSequence source, Supply supply) {
+        this(source, 256);
+        this.supply = supply;
+        this.reach(0);
+    }
+
+    TokenStream(CharSequence source, int capacity) {
+        this.source = source;
+
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+        this.literals = new Object[capacity];
+    }
+
+    // Room for the tokens of length characters of typical source, within bounds.
+    static int capacity(int length) {
+        return Math.min(Math.max(16, length / 8), MAX_INITIAL_CAPACITY);
+    }
+
+    void add(TokenType type, int start, int length, int line, Object literal) {
+        if (this.size == this.types.length) this.grow(this.size * 2);
+
+        this.types[this.size] = (byte) type.ordinal();
+        this.starts[this.size] = start;
+        this.lengths[this.size] = length;
+        this.lines[this.size] = line;
+        this.literals[this.size] = literal;
+        this.size++;
+    }
+
+    private void grow(int capacity) {
+        this.types = Arrays.copyOf(this.types, capacity);
+        this.starts = Arrays.copyOf(this.starts, capacity);
+        this.lengths = Arrays.copyOf(this.lengths, capacity);
+        this.lines = Arrays.copyOf(this.lines, capacity);
+        this.literals = Arrays.copyOf(this.literals, capacity);
+    }
+
+    int size() {
+        return this.base + this.size;
+    }
+
+    // Adds the tokens of a chunk lexed elsewhere, with its errors, and returns
+    // the type of its last token.
+    TokenType append(TokenStream chunk) {
+        for (Deferred deferred : chunk.errors) {
+            this.errors.add(new Deferred(this.base + this.size + deferred.index(), deferred.error()));
+        }
+        int count = chunk.size;
+        if (this.size + count > this.types.length) this.grow(Math.max(this.size + count, this.size * 2));
+
+        System.arraycopy(chunk.types, 0, this.types, this.size, count);
+        System.arraycopy(chunk.starts, 0, this.starts, this.size, count);
+        System.arraycopy(chunk.lengths, 0, this.lengths, this.size, count);
+        System.arraycopy(chunk.lines, 0, this.lines, this.size, count);
+        System.arraycopy(chunk.literals, 0, this.literals, this.size, count);
+        this.size += count;
+
+        return chunk.type(count - 1);
+    }
+
+    // Removes the last token, the EOF of a chunk that does not end the source.
+    void dropLast() {
+        this.size--;
+        this.literals[this.size] = null;
+    }
+
+    // Holds an error back until the parser reaches the token just added.
+    void defer(String error) {
+        this.errors.add(new Deferred(this.base + this.size - 1, error));
+    }
+
+    // Fills the stream as far as the token at index.
+    void reach(int index) {
+        while (this.supply != null && index >= this.base + this.size) {
+            if (this.supply.fill(this) == TokenType.EOF) this.supply = null;
+        }
+        while (!this.errors.isEmpty() && this.errors.peek().index() <= index) {
+            Lox.report(this.errors.poll().error());
+        }
+    }
+
+    // Drops the tokens before index, which must not be read again.
+    void release(int index) {
+        int count = index - this.base;
+        if (count <= 0) return;
+
+        int rest = this.size - count;
+        System.arraycopy(this.types, count, this.types, 0, rest);
+        System.arraycopy(this.starts, count, this.starts, 0, rest);
+        System.arraycopy(this.lengths, count, this.lengths, 0, rest);
+        System.arraycopy(this.lines, count, this.lines, 0, rest);
+        System.arraycopy(this.literals, count, this.literals, 0, rest);
+        Arrays.fill(this.literals, rest, this.size, null);
+        this.base = index;
+        this.size = rest;
+    }
+
+    TokenType type(int index) {
+        return TYPES[this.types[index - this.base]];
+    }
+
+    int start(int index) {
+        return this.starts[index - this.base];
+    }
+
+    int length(int index) {
+        return this.lengths[index - this.base];
+    }
+
+    int line(int index) {
+        return this.lines[index - this.base];
+    }
+
+    Object literal(int index) {
+        return this.literals[index - this.base];
+    }
+
+    // A Token for the parts of the pipeline that hold on to one, such as AST nodes.
+    Token token(int index) {
+        int i = index - this.base;
+        if (this.literals[i] instanceof String text) {
+            return new Token(this.type(index), this.starts[i], this.lengths[i], this.lines[i], text);
+        }
+
+        return new Token(
+                this.type(index), this.source,
+                this.starts[i], this.lengths[i], this.lines[i],
+                this.literals[i]
+        );
+    }
+}
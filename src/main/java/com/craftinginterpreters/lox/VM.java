@@ -0,0 +1,467 @@
+package com.craftinginterpreters.lox;
+
+class VM {
+    private static final int FRAMES_MAX = 4096;
+    private static final int STACK_MAX = FRAMES_MAX * 64;
+
+    private static final class Frame {
+        Obj.Closure closure;
+        byte[] code;
+        Object[] constants;
+        int ip;
+        // Stack index of slot 0, the callee, where the result will go.
+        int base;
+    }
+
+    private final Globals globals = new Globals();
+
+    private final Object[] stack = new Object[STACK_MAX];
+    private int sp = 0;
+
+    private final Frame[] frames = new Frame[FRAMES_MAX];
+    private int frameCount = 0;
+
+    // Upvalues still pointing into the stack, highest slot first.
+    private Obj.Upvalue openUpvalues = null;
+
+    VM() {
+        for (int i = 0; i < FRAMES_MAX; i++) {
+            this.frames[i] = new Frame();
+        }
+
+        this.globals.define(Symbol.of("clock"), new Obj.Native(
+                0, (Object[] arguments) -> (double) System.currentTimeMillis() / 1000.0
+        ));
+    }
+
+    void interpret(Obj.Function script) {
+        try {
+            Obj.Closure closure = new Obj.Closure(script, new Obj.Upvalue[0]);
+            this.push(closure);
+            this.call(closure, 0);
+            this.run();
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        } finally {
+            this.sp = 0;
+            this.frameCount = 0;
+            this.openUpvalues = null;
+        }
+    }
+
+    private void run() {
+        Frame frame = this.frames[this.frameCount - 1];
+        byte[] code = frame.code;
+        Object[] constants = frame.constants;
+        int ip = frame.ip;
+        int base = frame.base;
+        Obj.Upvalue[] upvalues = frame.closure.upvalues;
+
+        for (;;) {
+            switch (code[ip++]) {
+                case OpCode.CONSTANT -> {
+                    this.push(constants[this.readShort(code, ip)]);
+                    ip += 2;
+                }
+                case OpCode.NIL -> this.push(null);
+                case OpCode.TRUE -> this.push(true);
+                case OpCode.FALSE -> this.push(false);
+                case OpCode.POP -> this.sp--;
+                case OpCode.GET_LOCAL -> {
+                    this.push(this.stack[base + this.readShort(code, ip)]);
+                    ip += 2;
+                }
+                case OpCode.SET_LOCAL -> {
+                    this.stack[base + this.readShort(code, ip)] = this.peek(0);
+                    ip += 2;
+                }
+                case OpCode.GET_UPVALUE -> {
+                    Obj.Upvalue upvalue = upvalues[this.readShort(code, ip)];
+                    ip += 2;
+                    this.push(upvalue.slot >= 0 ? this.stack[upvalue.slot] : upvalue.value);
+                }
+                case OpCode.SET_UPVALUE -> {
+                    Obj.Upvalue upvalue = upvalues[this.readShort(code, ip)];
+                    ip += 2;
+                    if (upvalue.slot >= 0) {
+                        this.stack[upvalue.slot] = this.peek(0);
+                    } else {
+                        upvalue.value = this.peek(0);
+                    }
+                }
+                case OpCode.GET_GLOBAL -> {
+                    Symbol name = (Symbol) constants[this.readShort(code, ip)];
+                    ip += 2;
+                    Object value = this.globals.get(name);
+                    if (value == Globals.UNDEFINED) {
+                        throw this.error(frame, ip, "Undefined variable '" + name + "'.");
+                    }
+                    this.push(value);
+                }
+                case OpCode.SET_GLOBAL -> {
+                    Symbol name = (Symbol) constants[this.readShort(code, ip)];
+                    ip += 2;
+                    if (!this.globals.assign(name, this.peek(0))) {
+                        throw this.error(frame, ip, "Undefined variable '" + name + "'.");
+                    }
+                }
+                case OpCode.DEFINE_GLOBAL -> {
+                    Symbol name = (Symbol) constants[this.readShort(code, ip)];
+                    ip += 2;
+                    this.globals.define(name, this.pop());
+                }
+                case OpCode.GET_PROPERTY -> {
+                    Symbol name = (Symbol) constants[this.readShort(code, ip)];
+                    ip += 2;
+                    if (!(this.peek(0) instanceof Obj.Instance instance)) {
+                        throw this.error(frame, ip, "Only instances have properties.");
+                    }
+
+                    int slot = instance.shape.lookup(name);
+                    if (slot >= 0) {
+                        this.stack[this.sp - 1] = instance.fields[slot];
+                        continue;
+                    }
+
+                    Obj.Closure method = instance.klass.methods.get(name);
+                    if (method == null) {
+                        throw this.error(frame, ip, "Undefined property '" + name + "'.");
+                    }
+                    this.stack[this.sp - 1] = new Obj.BoundMethod(instance, method);
+                }
+                case OpCode.SET_PROPERTY -> {
+                    Symbol name = (Symbol) constants[this.readShort(code, ip)];
+                    ip += 2;
+                    if (!(this.peek(1) instanceof Obj.Instance instance)) {
+                        throw this.error(frame, ip, "Only instances have fields.");
+                    }
+
+                    Object value = this.pop();
+                    instance.set(name, value);
+                    this.stack[this.sp - 1] = value;
+                }
+                case OpCode.GET_SUPER -> {
+                    Symbol name = (Symbol) constants[this.readShort(code, ip)];
+                    ip += 2;
+                    Obj.Class superclass = (Obj.Class) this.pop();
+                    Obj.Closure method = superclass.methods.get(name);
+                    if (method == null) {
+                        throw this.error(frame, ip, "Undefined property '" + name + "'.");
+                    }
+                    this.stack[this.sp - 1] = new Obj.BoundMethod(
+                            (Obj.Instance) this.peek(0), method
+                    );
+                }
+                case OpCode.EQUAL -> {
+                    Object b = this.pop();
+                    this.stack[this.sp - 1] = Interpreter.isEqual(this.peek(0), b);
+                }
+                case OpCode.NOT_EQUAL -> {
+                    Object b = this.pop();
+                    this.stack[this.sp - 1] = !Interpreter.isEqual(this.peek(0), b);
+                }
+                case OpCode.GREATER -> {
+                    if (!(this.peek(1) instanceof Double a && this.peek(0) instanceof Double b)) {
+                        throw this.error(frame, ip, "Operands must be numbers.");
+                    }
+                    this.stack[--this.sp - 1] = a > b;
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    if (!(this.peek(1) instanceof Double a && this.peek(0) instanceof Double b)) {
+                        throw this.error(frame, ip, "Operands must be numbers.");
+                    }
+                    this.stack[--this.sp - 1] = a >= b;
+                }
+                case OpCode.LESS -> {
+                    if (!(this.peek(1) instanceof Double a && this.peek(0) instanceof Double b)) {
+                        throw this.error(frame, ip, "Operands must be numbers.");
+                    }
+                    this.stack[--this.sp - 1] = a < b;
+                }
+                case OpCode.LESS_EQUAL -> {
+                    if (!(this.peek(1) instanceof Double a && this.peek(0) instanceof Double b)) {
+                        throw this.error(frame, ip, "Operands must be numbers.");
+                    }
+                    this.stack[--this.sp - 1] = a <= b;
+                }
+                case OpCode.ADD -> {
+                    if (this.peek(1) instanceof Double a && this.peek(0) instanceof Double b) {
+                        this.stack[--this.sp - 1] = a + b;
+                    } else if (this.peek(1) instanceof String a && this.peek(0) instanceof String b) {
+                        this.stack[--this.sp - 1] = a + b;
+                    } else {
+                        throw this.error(frame, ip, "Operands must be two numbers or two strings.");
+                    }
+                }
+                case OpCode.SUBTRACT -> {
+                    if (!(this.peek(1) instanceof Double a && this.peek(0) instanceof Double b)) {
+                        throw this.error(frame, ip, "Operands must be numbers.");
+                    }
+                    this.stack[--this.sp - 1] = a - b;
+                }
+                case OpCode.MULTIPLY -> {
+                    if (!(this.peek(1) instanceof Double a && this.peek(0) instanceof Double b)) {
+                        throw this.error(frame, ip, "Operands must be numbers.");
+                    }
+                    this.stack[--this.sp - 1] = a * b;
+                }
+                case OpCode.DIVIDE -> {
+                    if (!(this.peek(1) instanceof Double a && this.peek(0) instanceof Double b)) {
+                        throw this.error(frame, ip, "Operands must be numbers.");
+                    }
+                    this.stack[--this.sp - 1] = a / b;
+                }
+                case OpCode.NOT -> this.stack[this.sp - 1] = !Interpreter.isTruthy(this.peek(0));
+                case OpCode.NEGATE -> {
+                    if (!(this.peek(0) instanceof Double a)) {
+                        throw this.error(frame, ip, "Operand must be a number.");
+                    }
+                    this.stack[this.sp - 1] = -a;
+                }
+                case OpCode.PRINT -> System.out.println(Interpreter.stringify(this.pop()));
+                case OpCode.JUMP -> ip += this.readShort(code, ip) + 2;
+                case OpCode.JUMP_IF_FALSE -> {
+                    if (Interpreter.isTruthy(this.peek(0))) {
+                        ip += 2;
+                    } else {
+                        ip += this.readShort(code, ip) + 2;
+                    }
+                }
+                case OpCode.LOOP -> ip -= this.readShort(code, ip) - 2;
+                case OpCode.CALL -> {
+                    int argCount = code[ip++] & 0xff;
+                    frame.ip = ip;
+                    this.callValue(frame, this.peek(argCount), argCount);
+
+                    frame = this.frames[this.frameCount - 1];
+                    code = frame.code;
+                    constants = frame.constants;
+                    ip = frame.ip;
+                    base = frame.base;
+                    upvalues = frame.closure.upvalues;
+                }
+                case OpCode.INVOKE -> {
+                    Symbol name = (Symbol) constants[this.readShort(code, ip)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    if (!(this.peek(argCount) instanceof Obj.Instance instance)) {
+                        throw this.error(frame, ip, "Only instances have properties.");
+                    }
+
+                    int slot = instance.shape.lookup(name);
+                    if (slot >= 0) {
+                        Object field = instance.fields[slot];
+                        this.stack[this.sp - argCount - 1] = field;
+                        this.callValue(frame, field, argCount);
+                    } else {
+                        Obj.Closure method = instance.klass.methods.get(name);
+                        if (method == null) {
+                            throw this.error(frame, ip, "Undefined property '" + name + "'.");
+                        }
+                        this.call(method, argCount);
+                    }
+
+                    frame = this.frames[this.frameCount - 1];
+                    code = frame.code;
+                    constants = frame.constants;
+                    ip = frame.ip;
+                    base = frame.base;
+                    upvalues = frame.closure.upvalues;
+                }
+                case OpCode.SUPER_INVOKE -> {
+                    Symbol name = (Symbol) constants[this.readShort(code, ip)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    Obj.Class superclass = (Obj.Class) this.pop();
+                    Obj.Closure method = superclass.methods.get(name);
+                    if (method == null) {
+                        throw this.error(frame, ip, "Undefined property '" + name + "'.");
+                    }
+                    this.call(method, argCount);
+
+                    frame = this.frames[this.frameCount - 1];
+                    code = frame.code;
+                    constants = frame.constants;
+                    ip = frame.ip;
+                    base = frame.base;
+                    upvalues = frame.closure.upvalues;
+                }
+                case OpCode.CLOSURE -> {
+                    Obj.Function function = (Obj.Function) constants[this.readShort(code, ip)];
+                    ip += 2;
+                    Obj.Upvalue[] captured = new Obj.Upvalue[function.upvalueCount];
+                    for (int i = 0; i < captured.length; i++) {
+                        boolean isLocal = code[ip] != 0;
+                        int index = this.readShort(code, ip + 1);
+                        ip += 3;
+                        captured[i] = isLocal ? this.capture(base + index) : upvalues[index];
+                    }
+                    this.push(new Obj.Closure(function, captured));
+                }
+                case OpCode.CLOSE_UPVALUE -> {
+                    this.close(this.sp - 1);
+                    this.sp--;
+                }
+                case OpCode.RETURN -> {
+                    Object result = this.pop();
+                    this.close(frame.base);
+                    this.sp = frame.base;
+                    frame.closure = null;
+                    this.frameCount--;
+                    if (this.frameCount == 0) return;
+
+                    // The result replaces the callee.
+                    this.stack[this.sp++] = result;
+
+                    frame = this.frames[this.frameCount - 1];
+                    code = frame.code;
+                    constants = frame.constants;
+                    ip = frame.ip;
+                    base = frame.base;
+                    upvalues = frame.closure.upvalues;
+                }
+                case OpCode.CLASS -> {
+                    this.push(new Obj.Class(((Symbol) constants[this.readShort(code, ip)]).name));
+                    ip += 2;
+                }
+                case OpCode.INHERIT -> {
+                    if (!(this.peek(1) instanceof Obj.Class superclass)) {
+                        throw this.error(frame, ip, "Superclass must be a class.");
+                    }
+
+                    Obj.Class subclass = (Obj.Class) this.pop();
+                    subclass.methods.putAll(superclass.methods);
+                    subclass.initializer = superclass.initializer;
+                }
+                case OpCode.METHOD -> {
+                    Symbol name = (Symbol) constants[this.readShort(code, ip)];
+                    ip += 2;
+                    Obj.Closure method = (Obj.Closure) this.pop();
+                    Obj.Class klass = (Obj.Class) this.peek(0);
+                    klass.methods.put(name, method);
+                    if (name == Symbol.INIT) klass.initializer = method;
+                }
+                default -> throw new IllegalStateException("Unknown opcode " + code[ip - 1]);
+            }
+        }
+    }
+
+    private void callValue(Frame caller, Object callee, int argCount) {
+        if (callee instanceof Obj.Closure closure) {
+            this.call(closure, argCount);
+            return;
+        } else if (callee instanceof Obj.BoundMethod bound) {
+            // The receiver takes the callee's slot, as "this".
+            this.stack[this.sp - argCount - 1] = bound.receiver;
+            this.call(bound.method, argCount);
+            return;
+        } else if (callee instanceof Obj.Class klass) {
+            Obj.Instance instance = new Obj.Instance(klass);
+            this.stack[this.sp - argCount - 1] = instance;
+            if (klass.initializer != null) {
+                this.call(klass.initializer, argCount);
+            } else if (argCount != 0) {
+                throw this.error(caller, caller.ip, "Expected 0 arguments but got " + argCount + ".");
+            }
+            return;
+        } else if (callee instanceof Obj.Native function) {
+            if (argCount != function.arity) {
+                throw this.error(
+                        caller, caller.ip,
+                        "Expected " + function.arity + " arguments but got " + argCount + "."
+                );
+            }
+
+            Object[] arguments = new Object[argCount];
+            System.arraycopy(this.stack, this.sp - argCount, arguments, 0, argCount);
+            this.sp -= argCount;
+            this.stack[this.sp - 1] = function.body.call(arguments);
+            return;
+        }
+
+        throw this.error(caller, caller.ip, "Can only call function and classes.");
+    }
+
+    private void call(Obj.Closure closure, int argCount) {
+        Obj.Function function = closure.function;
+        if (this.frameCount > 0 && argCount != function.arity) {
+            Frame caller = this.frames[this.frameCount - 1];
+            throw this.error(
+                    caller, caller.ip,
+                    "Expected " + function.arity + " arguments but got " + argCount + "."
+            );
+        }
+
+        if (this.frameCount == FRAMES_MAX) {
+            Frame caller = this.frames[this.frameCount - 1];
+            throw this.error(caller, caller.ip, "Stack overflow.");
+        }
+
+        // The arguments stay where they are and become the callee's first locals.
+        Frame frame = this.frames[this.frameCount++];
+        frame.base = this.sp - argCount - 1;
+        frame.closure = closure;
+        frame.code = function.chunk.code;
+        frame.constants = function.chunk.constants;
+        frame.ip = 0;
+    }
+
+    private Obj.Upvalue capture(int slot) {
+        Obj.Upvalue previous = null;
+        Obj.Upvalue upvalue = this.openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+
+        // Closures capturing the same variable share its upvalue.
+        if (upvalue != null && upvalue.slot == slot) return upvalue;
+
+        Obj.Upvalue created = new Obj.Upvalue(slot);
+        created.next = upvalue;
+        if (previous == null) {
+            this.openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    // Moves the values of the variables at or above the slot into their upvalues.
+    private void close(int slot) {
+        while (this.openUpvalues != null && this.openUpvalues.slot >= slot) {
+            Obj.Upvalue upvalue = this.openUpvalues;
+            upvalue.value = this.stack[upvalue.slot];
+            upvalue.slot = -1;
+            this.openUpvalues = upvalue.next;
+            upvalue.next = null;
+        }
+    }
+
+    private int readShort(byte[] code, int ip) {
+        return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+    }
+
+    private void push(Object value) {
+        if (this.sp == STACK_MAX) {
+            Frame frame = this.frames[this.frameCount - 1];
+            throw this.error(frame, frame.ip, "Stack overflow.");
+        }
+        this.stack[this.sp++] = value;
+    }
+
+    private Object pop() {
+        return this.stack[--this.sp];
+    }
+
+    private Object peek(int distance) {
+        return this.stack[this.sp - 1 - distance];
+    }
+
+    private RuntimeError error(Frame frame, int ip, String message) {
+        int line = frame.closure.function.chunk.lines[Math.max(ip - 1, 0)];
+        return new RuntimeError(line, message);
+    }
+}
@@ -16,40 +16,44 @@ public class GenerateAst {
         GenerateAst.defineAst(
                 outputDir,
                 "Expr",
+                true,
                 Arrays.asList(
-                        "Assign   : Token name, Expr value",
+                        "Assign   : Token name, Expr value : int depth = -1, int slot",
                         "Binary   : Expr left, Token operator, Expr right",
                         "Call     : Expr callee, Token paren, List<Expr> arguments",
-                        "Get      : Expr object, Token name",
+                        "Get      : Expr object, Token name : PropertyCache cache = new PropertyCache()",
                         "Grouping : Expr expression",
                         "Literal  : Object value",
                         "Logical  : Expr left, Token operator, Expr right",
-                        "Set      : Expr object, Token name, Expr value",
-                        "Super    : Token keyword, Token method",
-                        "This     : Token keyword",
+                        "Set      : Expr object, Token name, Expr value : PropertyCache cache = new PropertyCache()",
+                        "Super    : Token keyword, Token method : int depth, LoxClass cachedClass, LoxFunction cachedMethod",
+                        "This     : Token keyword : int depth, int slot",
                         "Unary    : Token operator, Expr right",
-                        "Variable : Token name"
+                        "Variable : Token name : int depth = -1, int slot"
                 )
         );
 
+        // Statements are only executed for their effect, so their visitor returns nothing.
         GenerateAst.defineAst(
                 outputDir,
                 "Stmt",
+                false,
                 Arrays.asList(
-                        "Block      : List<Stmt> statements",
-                        "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods",
+                        "Block      : List<Stmt> statements : int frameSize",
+                        "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods : int slot",
                         "Expression : Expr expression",
-                        "Function   : Token name, List<Token> params, List<Stmt> body",
+                        // A body skipped by a lazy parse is null until the function is first called.
+                        "Function   : Token name, List<Token> params, List<Stmt> body : List<Stmt> body, LazyBody lazy, int slot, int frameSize, boolean isMethod",
                         "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
                         "Print      : Expr expression",
                         "Return     : Token keyword, Expr value",
-                        "Var        : Token name, Expr initializer",
+                        "Var        : Token name, Expr initializer : int slot",
                         "While      : Expr condition, Stmt body"
                 )
         );
     }
 
-    private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException {
+    private static void defineAst(String outputDir, String baseName, boolean returns, List<String> types) throws IOException {
         String path = outputDir + "/" + baseName + ".java";
         PrintWriter writer = new PrintWriter(path, StandardCharsets.UTF_8);
 
@@ -61,30 +65,32 @@ public class GenerateAst {
         writer.println();
         writer.println("abstract class " + baseName + " {");
 
-        GenerateAst.defineVisitor(writer, baseName, types);
+        GenerateAst.defineVisitor(writer, baseName, returns, types);
 
         // The AST classes.
         for (String type : types) {
-            String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            GenerateAst.defineType(writer, baseName, className, fields);
+            String[] parts = type.split(":");
+            String className = parts[0].trim();
+            String fields = parts[1].trim();
+            String resolved = parts.length > 2 ? parts[2].trim() : null;
+            GenerateAst.defineType(writer, baseName, returns, className, fields, resolved);
         }
 
         // The base accept() method.
         writer.println();
-        writer.println("    abstract <R> R accept(Visitor<R> visitor);");
+        writer.println(returns ? "    abstract <R> R accept(Visitor<R> visitor);" : "    abstract void accept(Visitor visitor);");
 
         writer.println("}");
         writer.close();
     }
 
-    private static void defineVisitor(PrintWriter writer, String baseName, List<String> types) {
-        writer.println("    interface Visitor<R> {");
+    private static void defineVisitor(PrintWriter writer, String baseName, boolean returns, List<String> types) {
+        writer.println(returns ? "    interface Visitor<R> {" : "    interface Visitor {");
 
         for (String type : types) {
             String typeName = type.split(":")[0].trim();
             writer.println(
-                    "        R visit" + typeName + baseName + "(" + typeName
+                    "        " + (returns ? "R" : "void") + " visit" + typeName + baseName + "(" + typeName
                             + " " + baseName.toLowerCase() + ");"
             );
         }
@@ -92,7 +98,7 @@ public class GenerateAst {
         writer.println("    }");
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+    private static void defineType(PrintWriter writer, String baseName, boolean returns, String className, String fieldList, String resolvedList) {
         writer.println(
                 "    static class " + className + " extends " + baseName + " {"
         );
@@ -112,17 +118,24 @@ public class GenerateAst {
         // Visitor pattern.
         writer.println();
         writer.println("        @Override");
-        writer.println("        <R> R accept(Visitor<R> visitor) {");
+        writer.println(returns ? "        <R> R accept(Visitor<R> visitor) {" : "        void accept(Visitor visitor) {");
         writer.println(
-                "            return visitor.visit" + className + baseName
+                "            " + (returns ? "return " : "") + "visitor.visit" + className + baseName
                         + "(this);"
         );
         writer.println("        }");
 
+        // Fields filled in after parsing, by the resolver or at run time. A field
+        // of the constructor listed again here is left assignable.
+        List<String> resolved = resolvedList == null ? List.of() : Arrays.asList(resolvedList.split(", "));
+
         // Fields.
         writer.println();
         for (String field : fields) {
-            writer.println("        final " + field + ";");
+            if (!resolved.contains(field)) writer.println("        final " + field + ";");
+        }
+        for (String field : resolved) {
+            writer.println("        " + field + ";");
         }
 
         writer.println("    }");
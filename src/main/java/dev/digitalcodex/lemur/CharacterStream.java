@@ -1,8 +1,25 @@
 package dev.digitalcodex.lemur;
 
+// A read-only source of characters.
 public interface CharacterStream {
-    char read();
-    void write(char out);
+    // Returned by read() once the stream is exhausted. It is outside the range
+    // of char, so every character, NUL included, can be read.
+    int EOF = -1;
+
+    // The next character, or EOF.
+    int read();
 
     CharacterEncoding encoding();
-}
\ No newline at end of file
+
+    // Reads up to length chars into buffer, returning how many were read or -1 at the end.
+    default int read(char[] buffer, int offset, int length) {
+        int count = 0;
+        while (count < length) {
+            int c = this.read();
+            if (c == EOF) break;
+            buffer[offset + count++] = (char) c;
+        }
+
+        return count == 0 && length > 0 ? -1 : count;
+    }
+}
@@ -0,0 +1,252 @@
+package dev.digitalcodex.lemur;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+// Characters decoded from a byte stream, such as a pipe or a socket, through a
+// fixed-size byte buffer. Malformed input decodes to U+FFFD.
+public final class DecodingStream implements CharacterStream {
+    private static final int REPLACEMENT = 0xfffd;
+    // Returned by decode() when a whole character is not buffered and blocking is not allowed.
+    private static final int PENDING = -2;
+    // Byte order marks, big-endian first.
+    private static final int[][] UTF_8_MARKS = {{0xef, 0xbb, 0xbf}};
+    private static final int[][] UTF_16_MARKS = {{0xfe, 0xff}, {0xff, 0xfe}};
+    private static final int[][] UTF_32_MARKS = {{0, 0, 0xfe, 0xff}, {0xff, 0xfe, 0, 0}};
+
+    private final InputStream in;
+    private final CharacterEncoding encoding;
+    private final byte[] bytes;
+    private int position = 0;
+    private int limit = 0;
+    private boolean exhausted = false;
+
+    private boolean started = false;
+    private boolean bigEndian = true;
+    // The low half of a surrogate pair that did not fit in the caller's buffer.
+    private char pending = 0;
+
+    public DecodingStream(InputStream in, CharacterEncoding encoding) {
+        this(in, encoding, 8192);
+    }
+
+    public DecodingStream(InputStream in, CharacterEncoding encoding, int capacity) {
+        if (capacity < 4) throw new IllegalArgumentException("Capacity must be at least 4 bytes.");
+
+        this.in = in;
+        this.encoding = encoding;
+        this.bytes = new byte[capacity];
+    }
+
+    public int read() {
+        if (this.pending != 0) return this.takePending();
+
+        int c = this.decode(true);
+        if (c < 0) return EOF;
+        if (c >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            this.pending = Character.lowSurrogate(c);
+            return Character.highSurrogate(c);
+        }
+
+        return (char) c;
+    }
+
+    // Blocks only until the first character arrives, then returns what is buffered.
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        if (length == 0) return 0;
+
+        int count = 0;
+        if (this.pending != 0) buffer[offset + count++] = this.takePending();
+
+        while (count < length) {
+            int c = this.decode(count == 0);
+            if (c < 0) break;
+
+            if (c >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                buffer[offset + count++] = Character.highSurrogate(c);
+                if (count < length) {
+                    buffer[offset + count++] = Character.lowSurrogate(c);
+                } else {
+                    this.pending = Character.lowSurrogate(c);
+                }
+            } else {
+                buffer[offset + count++] = (char) c;
+            }
+        }
+
+        return count == 0 ? -1 : count;
+    }
+
+    public CharacterEncoding encoding() {
+        return this.encoding;
+    }
+
+    private char takePending() {
+        char c = this.pending;
+        this.pending = 0;
+        return c;
+    }
+
+    // Returns the next code point, -1 at the end of input, or PENDING.
+    private int decode(boolean block) {
+        if (!this.started && !this.skipByteOrderMark(block)) return PENDING;
+
+        return switch (this.encoding) {
+            case US_ASCII -> this.decodeAscii(block);
+            case UTF_8 -> this.decodeUtf8(block);
+            case UTF_16 -> this.decodeUtf16(block);
+            case UTF_32 -> this.decodeUtf32(block);
+        };
+    }
+
+    private int decodeAscii(boolean block) {
+        if (!this.ensure(1, block)) return this.end(block);
+
+        int b = this.bytes[this.position++] & 0xff;
+        return b < 0x80 ? b : REPLACEMENT;
+    }
+
+    // A malformed sequence decodes to one U+FFFD for its longest valid prefix,
+    // and decoding resumes at the first byte that does not fit, as CharsetDecoder
+    // does. Bounding the second byte rules out overlong forms and code points past
+    // U+10FFFF. An encoded surrogate is replaced whole, as CharsetDecoder does.
+    private int decodeUtf8(boolean block) {
+        if (!this.ensure(1, block)) return this.end(block);
+
+        int lead = this.bytes[this.position] & 0xff;
+        if (lead < 0x80) {
+            this.position++;
+            return lead;
+        }
+        if (lead < 0xc2 || lead > 0xf4) {
+            this.position++;
+            return REPLACEMENT;
+        }
+
+        int width = lead >= 0xf0 ? 4 : lead >= 0xe0 ? 3 : 2;
+        if (!this.ensure(width, block) && !this.exhausted) return PENDING;
+        // Less than width at the end of input.
+        int available = Math.min(width, this.limit - this.position);
+
+        int c = lead & (0x7f >> width);
+        for (int i = 1; i < width; i++) {
+            if (i == available) {
+                this.position += i;
+                return REPLACEMENT;
+            }
+
+            int b = this.bytes[this.position + i] & 0xff;
+            int low = i == 1 && lead == 0xe0 ? 0xa0 : i == 1 && lead == 0xf0 ? 0x90 : 0x80;
+            int high = i == 1 && lead == 0xf4 ? 0x8f : 0xbf;
+            if (b < low || b > high) {
+                this.position += i;
+                return REPLACEMENT;
+            }
+            c = (c << 6) | (b & 0x3f);
+        }
+        this.position += width;
+
+        return width == 3 && Character.isSurrogate((char) c) ? REPLACEMENT : c;
+    }
+
+    // Surrogates pass through as they are, since each half is a char on its own.
+    private int decodeUtf16(boolean block) {
+        if (!this.ensure(2, block)) return this.end(block);
+
+        int b0 = this.bytes[this.position] & 0xff;
+        int b1 = this.bytes[this.position + 1] & 0xff;
+        this.position += 2;
+        return this.bigEndian ? (b0 << 8) | b1 : (b1 << 8) | b0;
+    }
+
+    private int decodeUtf32(boolean block) {
+        if (!this.ensure(4, block)) return this.end(block);
+
+        int c = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = this.bytes[this.position + (this.bigEndian ? i : 3 - i)] & 0xff;
+            c = (c << 8) | b;
+        }
+        this.position += 4;
+
+        if (c < 0 || c > Character.MAX_CODE_POINT) return REPLACEMENT;
+        if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT && Character.isSurrogate((char) c)) return REPLACEMENT;
+        return c;
+    }
+
+    // Consumes a byte order mark and picks the byte order it names. Big-endian
+    // without one. Waits only while the bytes so far could still be a mark, so a
+    // first line shorter than one is not held back.
+    private boolean skipByteOrderMark(boolean block) {
+        int[][] marks = switch (this.encoding) {
+            case US_ASCII -> new int[0][];
+            case UTF_8 -> UTF_8_MARKS;
+            case UTF_16 -> UTF_16_MARKS;
+            case UTF_32 -> UTF_32_MARKS;
+        };
+
+        for (int[] mark : marks) {
+            int matched = this.prefix(mark, block);
+            if (matched < 0) return false;
+
+            if (matched == mark.length) {
+                this.position += mark.length;
+                this.bigEndian = mark == marks[0];
+                break;
+            }
+        }
+
+        this.started = true;
+        return true;
+    }
+
+    // How many leading bytes of mark the input starts with, or -1 if that cannot
+    // be told without blocking.
+    private int prefix(int[] mark, boolean block) {
+        for (int i = 0; i < mark.length; i++) {
+            if (!this.ensure(i + 1, block)) return this.exhausted ? i : -1;
+            if ((this.bytes[this.position + i] & 0xff) != mark[i]) return i;
+        }
+        return mark.length;
+    }
+
+    // What decode() returns when fewer bytes are buffered than the next character needs.
+    private int end(boolean block) {
+        if (!this.exhausted && !block) return PENDING;
+        if (this.position == this.limit) return -1;
+
+        // A UTF-16 or UTF-32 unit cut off by the end of input. Too few bytes are
+        // left to start another, so they all go to the one replacement.
+        this.position = this.limit;
+        return REPLACEMENT;
+    }
+
+    private boolean ensure(int count, boolean block) {
+        while (this.limit - this.position < count) {
+            if (this.exhausted || !block) return false;
+            this.fill();
+        }
+        return true;
+    }
+
+    private void fill() {
+        if (this.position > 0) {
+            System.arraycopy(this.bytes, this.position, this.bytes, 0, this.limit - this.position);
+            this.limit -= this.position;
+            this.position = 0;
+        }
+
+        try {
+            int read = this.in.read(this.bytes, this.limit, this.bytes.length - this.limit);
+            if (read < 0) {
+                this.exhausted = true;
+            } else {
+                this.limit += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package dev.digitalcodex.lemur;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A file read through a memory mapping rather than copied onto the heap. ASCII
+// text is served straight from the mapped bytes; other text is decoded once.
+public final class MappedStream implements CharacterStream, CharSequence, AutoCloseable {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    // Unmaps a buffer, or null where the runtime does not allow it.
+    private static final MethodHandle UNMAP = MappedStream.unmapper();
+
+    private final CharacterEncoding encoding;
+    // Replaced by an empty buffer once closed, so a stray read fails rather than
+    // touching memory that is no longer mapped.
+    private ByteBuffer bytes;
+    private final CharBuffer decoded;
+    private final int length;
+    private int current = 0;
+
+    public MappedStream(Path path, CharacterEncoding encoding) throws IOException {
+        this.encoding = encoding;
+
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + path);
+            }
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (encoding == CharacterEncoding.UTF_8 && MappedStream.hasByteOrderMark(bytes)) {
+            bytes = bytes.position(3).slice();
+        }
+        // Little-endian, so the first match in a word is its lowest set byte.
+        this.bytes = bytes.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (encoding == CharacterEncoding.US_ASCII
+                || (encoding == CharacterEncoding.UTF_8 && MappedStream.isAscii(bytes))) {
+            this.decoded = null;
+            this.length = bytes.limit();
+        } else {
+            this.decoded = MappedStream.charset(encoding).decode(bytes.duplicate());
+            this.length = this.decoded.remaining();
+        }
+    }
+
+    public int read() {
+        if (this.current >= this.length) return EOF;
+        return this.charAt(this.current++);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        int count = Math.min(length, this.length - this.current);
+        if (count <= 0) return length == 0 ? 0 : -1;
+
+        if (this.decoded != null) {
+            this.decoded.get(this.current, buffer, offset, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (char) (this.bytes.get(this.current + i) & 0xff);
+            }
+        }
+        this.current += count;
+        return count;
+    }
+
+    public CharacterEncoding encoding() {
+        return this.encoding;
+    }
+
+    // The index of the first c in [from, to), or -1. On the ASCII path this tests
+    // eight mapped bytes at a time, much as String.indexOf does for a String.
+    public int indexOf(char c, int from, int to) {
+        if (this.decoded != null) {
+            for (int i = from; i < to; i++) {
+                if (this.decoded.get(i) == c) return i;
+            }
+            return -1;
+        }
+        if (c > 0xff) return -1;
+
+        ByteBuffer bytes = this.bytes;
+        long pattern = ONES * c;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            // A zero byte in word marks a match. Borrows only flag bytes above a
+            // real match, so the lowest flagged byte is the first match.
+            long word = bytes.getLong(i) ^ pattern;
+            long found = (word - ONES) & ~word & HIGH_BITS;
+            if (found != 0) return i + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+        for (; i < to; i++) {
+            if ((bytes.get(i) & 0xff) == c) return i;
+        }
+        return -1;
+    }
+
+    // The encoded text after any byte order mark, read-only. Like the stream, it
+    // must not be read once the stream is closed.
+    public ByteBuffer bytes() {
+        return this.bytes.asReadOnlyBuffer();
+    }
+
+    // Unmaps the file now rather than whenever the collector gets to the buffer.
+    // The stream, and any slice of it not yet copied out, must not be read after.
+    @Override
+    public void close() {
+        ByteBuffer bytes = this.bytes;
+        this.bytes = ByteBuffer.allocate(0);
+        if (UNMAP == null || !bytes.isDirect()) return;
+
+        try {
+            UNMAP.invokeExact(bytes);
+        } catch (Throwable e) {
+            // Leave the mapping to the collector.
+        }
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (this.decoded != null) return this.decoded.get(index);
+        return (char) (this.bytes.get(index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (this.decoded != null) return this.decoded.subSequence(start, end).toString();
+
+        byte[] slice = new byte[end - start];
+        this.bytes.get(start, slice);
+        return new String(slice, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return this.subSequence(0, this.length).toString();
+    }
+
+    private static boolean hasByteOrderMark(ByteBuffer bytes) {
+        return bytes.limit() >= 3
+                && bytes.get(0) == (byte) 0xef
+                && bytes.get(1) == (byte) 0xbb
+                && bytes.get(2) == (byte) 0xbf;
+    }
+
+    // Checks eight bytes at a time for a set high bit.
+    private static boolean isAscii(ByteBuffer bytes) {
+        int i = 0;
+        for (; i + 8 <= bytes.limit(); i += 8) {
+            if ((bytes.getLong(i) & HIGH_BITS) != 0) return false;
+        }
+        for (; i < bytes.limit(); i++) {
+            if (bytes.get(i) < 0) return false;
+        }
+
+        return true;
+    }
+
+    // Unsafe.invokeCleaner is the only way to unmap a buffer before the foreign
+    // memory API, and is looked up reflectively since it is not public API.
+    private static MethodHandle unmapper() {
+        try {
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            Field field = unsafe.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafe, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Charset charset(CharacterEncoding encoding) {
+        return switch (encoding) {
+            case US_ASCII -> StandardCharsets.US_ASCII;
+            case UTF_8 -> StandardCharsets.UTF_8;
+            case UTF_16 -> StandardCharsets.UTF_16;
+            case UTF_32 -> Charset.forName("UTF-32");
+        };
+    }
+}
@@ -8,11 +8,22 @@ public final class StringStream implements CharacterStream {
         this.source = source;
     }
 
-    public char read() {
+    public int read() {
+        if (this.current >= this.source.length()) return EOF;
         return this.source.charAt(this.current++);
     }
 
-    public void write(char out) {
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        int count = Math.min(length, this.source.length() - this.current);
+        if (count <= 0) return length == 0 ? 0 : -1;
 
+        this.source.getChars(this.current, this.current + count, buffer, offset);
+        this.current += count;
+        return count;
     }
-}
\ No newline at end of file
+
+    public CharacterEncoding encoding() {
+        return CharacterEncoding.UTF_16;
+    }
+}
@@ -0,0 +1,5 @@
+package dev.digitalcodex.lemur.lexer;
+
+// The text of one lexeme and where it started in the input.
+public record Lexeme(String text, int start, int line) {
+}
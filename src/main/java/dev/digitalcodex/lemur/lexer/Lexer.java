@@ -3,13 +3,73 @@ package dev.digitalcodex.lemur.lexer;
 import dev.digitalcodex.lemur.CharacterStream;
 import dev.digitalcodex.lemur.scanner.Scanner;
 
+// Groups characters from a scanner into lexemes. The input is never resident, so
+// the text of the lexeme in progress is collected as it is consumed.
 public class Lexer {
     private final Scanner scanner;
+    private final StringBuilder text = new StringBuilder();
     private int start = 0;
     private int current = 0;
+    private int startLine = 1;
     private int line = 1;
 
     public Lexer(CharacterStream source) {
         this.scanner = new Scanner(source);
     }
-}
\ No newline at end of file
+
+    public Lexer(Scanner scanner) {
+        this.scanner = scanner;
+    }
+
+    public boolean isAtEnd() {
+        return this.scanner.isAtEnd();
+    }
+
+    public int peek() {
+        return this.scanner.peek();
+    }
+
+    public int peek(int k) {
+        return this.scanner.peek(k);
+    }
+
+    // The character consumed, or CharacterStream.EOF at the end of input.
+    public int advance() {
+        int c = this.scanner.next();
+        if (c == CharacterStream.EOF) return c;
+
+        this.current++;
+        if (c == '\n') this.line++;
+        this.text.append((char) c);
+        return c;
+    }
+
+    public boolean match(char expected) {
+        if (this.isAtEnd() || this.peek() != expected) return false;
+
+        this.advance();
+        return true;
+    }
+
+    // Ends the lexeme in progress and starts the next one after it.
+    public Lexeme emit() {
+        Lexeme lexeme = new Lexeme(this.text.toString(), this.start, this.startLine);
+        this.skip();
+        return lexeme;
+    }
+
+    // Drops the lexeme in progress, as for whitespace and comments.
+    public void skip() {
+        this.text.setLength(0);
+        this.start = this.current;
+        this.startLine = this.line;
+    }
+
+    public int current() {
+        return this.current;
+    }
+
+    public int line() {
+        return this.line;
+    }
+}
@@ -2,14 +2,74 @@ package dev.digitalcodex.lemur.scanner;
 
 import dev.digitalcodex.lemur.CharacterStream;
 
+// Characters from a stream through a fixed-size ring buffer, so any input can be
+// scanned with up to capacity - 1 characters of lookahead without holding all of it.
 public class Scanner {
+    private static final int DEFAULT_CAPACITY = 4096;
+
     private final CharacterStream source;
+    private final char[] buffer;
+    private final int mask;
+    // Index of the next character, and how many characters are buffered from there.
+    private int head = 0;
+    private int count = 0;
+    private boolean exhausted = false;
 
     public Scanner(CharacterStream source) {
+        this(source, DEFAULT_CAPACITY);
+    }
+
+    public Scanner(CharacterStream source, int capacity) {
+        if (capacity < 2) throw new IllegalArgumentException("Capacity must be at least 2.");
+
         this.source = source;
+        this.buffer = new char[Integer.highestOneBit(capacity - 1) << 1];
+        this.mask = this.buffer.length - 1;
+    }
+
+    // The next character, or CharacterStream.EOF at the end of input.
+    public int next() {
+        if (this.count == 0 && !this.fill(1)) return CharacterStream.EOF;
+
+        char c = this.buffer[this.head];
+        this.head = (this.head + 1) & this.mask;
+        this.count--;
+        return c;
+    }
+
+    public int peek() {
+        return this.peek(0);
+    }
+
+    // The character k places past the next one, without consuming anything.
+    public int peek(int k) {
+        if (k < 0 || k >= this.buffer.length) {
+            throw new IllegalArgumentException("Lookahead of " + k + " is outside the buffer.");
+        }
+        if (k >= this.count && !this.fill(k + 1)) return CharacterStream.EOF;
+
+        return this.buffer[(this.head + k) & this.mask];
     }
 
-    public char next() {
-        return 0;
+    public boolean isAtEnd() {
+        return this.count == 0 && !this.fill(1);
+    }
+
+    // Reads into the free part of the ring until at least needed characters are buffered.
+    private boolean fill(int needed) {
+        while (this.count < needed) {
+            if (this.exhausted) return false;
+
+            int tail = (this.head + this.count) & this.mask;
+            int free = Math.min(this.buffer.length - this.count, this.buffer.length - tail);
+            int read = this.source.read(this.buffer, tail, free);
+            if (read < 0) {
+                this.exhausted = true;
+                return false;
+            }
+            this.count += read;
+        }
+
+        return true;
     }
-}
\ No newline at end of file
+}
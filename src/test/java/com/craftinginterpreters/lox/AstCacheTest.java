@@ -0,0 +1,135 @@
+package com.craftinginterpreters.lox;
+
+import dev.digitalcodex.lemur.CharacterEncoding;
+import dev.digitalcodex.lemur.MappedStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class AstCacheTest {
+    // Every statement and expression kind, with things for the resolver to record.
+    private static final String SOURCE = """
+            var nothing;
+            var literals = nil;
+            print true;
+            print false;
+            print 1.5;
+            print "text";
+            print -(1 + 2) * 3 / 4 - 5;
+            print !true == false != (1 < 2) and (3 <= 4) or (5 > 6) and (7 >= 8);
+            nothing = literals = "assigned";
+            fn outer(a, b) {
+                var local = a;
+                fn inner() {
+                    local = local + b;
+                    return local;
+                }
+                {
+                    var shadow = local;
+                    for (var i = 0; i < 3; i = i + 1) {
+                        if (i == shadow) print i; else inner();
+                    }
+                }
+                if (a) return;
+                while (false) print "never";
+                return inner;
+            }
+            class Base {
+                init(value) { this.value = value; return; }
+                get() { return this.value; }
+            }
+            class Derived < Base {
+                init(value) { super.init(value * 2); }
+                get() { return super.get() + 1; }
+            }
+            var box = Derived(outer(1, 2)());
+            box.value = box.get();
+            print box.value;
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_round_trip() {
+        AstCache cache = new AstCache(this.directory);
+        cache.store("program", AstCacheTest.resolved(SOURCE));
+
+        List<Stmt> loaded = cache.load("program");
+        Assertions.assertNotNull(loaded);
+        Assertions.assertEquals(TreeDump.dump(AstCacheTest.resolved(SOURCE)), TreeDump.dump(loaded));
+    }
+
+    @Test
+    void test_key_is_of_the_mapped_source() throws Exception {
+        Path script = this.directory.resolve("script.lox");
+        Files.writeString(script, "print 1;");
+        try (MappedStream source = new MappedStream(script, CharacterEncoding.UTF_8)) {
+            String key = AstCache.key(source.bytes());
+            Assertions.assertEquals(AstCache.key(ByteBuffer.wrap("print 1;".getBytes(StandardCharsets.UTF_8))), key);
+            // Hashing leaves the mapping as it was for the parser.
+            Assertions.assertEquals(key, AstCache.key(source.bytes()));
+            Assertions.assertEquals("print 1;", source.toString());
+        }
+
+        // A byte order mark is not part of the program.
+        Files.write(script, new byte[]{(byte) 0xef, (byte) 0xbb, (byte) 0xbf, 'p', 'r', 'i', 'n', 't', ' ', '2', ';'});
+        try (MappedStream source = new MappedStream(script, CharacterEncoding.UTF_8)) {
+            Assertions.assertEquals(AstCache.key(ByteBuffer.wrap("print 2;".getBytes(StandardCharsets.UTF_8))),
+                    AstCache.key(source.bytes()));
+        }
+    }
+
+    @Test
+    void test_missing_entry_is_a_miss() {
+        Assertions.assertNull(new AstCache(this.directory).load("missing"));
+    }
+
+    @Test
+    void test_damaged_entry_is_a_miss() throws Exception {
+        AstCache cache = new AstCache(this.directory);
+        cache.store("program", AstCacheTest.resolved(SOURCE));
+        Path entry = this.directory.resolve("program.ast");
+        byte[] good = Files.readAllBytes(entry);
+
+        List<byte[]> damaged = new ArrayList<>();
+        for (int length : new int[]{0, 3, 8, 12, 13, good.length / 2, good.length - 1}) {
+            damaged.add(Arrays.copyOf(good, length));
+        }
+        // A flipped bit anywhere: the header, the checksum or the program.
+        for (int at : new int[]{0, 4, 8, 12, good.length / 3, good.length / 2, good.length - 1}) {
+            byte[] bytes = good.clone();
+            bytes[at] ^= 0x10;
+            damaged.add(bytes);
+        }
+        damaged.add(Arrays.copyOf(good, good.length + 1));
+
+        for (byte[] bytes : damaged) {
+            Files.write(entry, bytes);
+            Assertions.assertNull(cache.load("program"), "length " + bytes.length);
+        }
+
+        // Storing again replaces the damaged entry.
+        cache.store("program", AstCacheTest.resolved(SOURCE));
+        Assertions.assertNotNull(cache.load("program"));
+    }
+
+    private static List<Stmt> resolved(String source) {
+        List<String> errors = new ArrayList<>();
+        List<Stmt> statements = Scripts.collecting(errors, () -> {
+            List<Stmt> parsed = new Parser(source).parse();
+            new Resolver().resolve(parsed);
+            return parsed;
+        });
+        Assertions.assertEquals(List.of(), errors);
+        return statements;
+    }
+}
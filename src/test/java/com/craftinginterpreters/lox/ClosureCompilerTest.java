@@ -0,0 +1,235 @@
+package com.craftinginterpreters.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+class ClosureCompilerTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_same_output_as_interpreter() throws Exception {
+        Scripts.assertSameOutput(this.directory, List.of(), List.of("--closures"),
+                new Scripts.Case("arithmetic", """
+                        var a = 7;
+                        var b = 2;
+                        print a + b * 3 - a / b;
+                        print -(a - b) * -b;
+                        print (a + 1) / (b - 2);
+                        print a > b;
+                        print a >= 7;
+                        print a < b;
+                        print b <= 2;
+                        print a == 7 and a != b;
+                        print !(a < b) or nil;
+                        """, 0),
+                // Strings in an arithmetic tree fall back from the numeric operators part way through.
+                new Scripts.Case("strings", """
+                        var s = "a";
+                        print s + "b";
+                        print (s + "b") + "c";
+                        print "x" + (s + s);
+                        print s == "a";
+                        var n = 1;
+                        print n + n + 1;
+                        n = "n";
+                        print n + n + "!";
+                        """, 0),
+                new Scripts.Case("functions", """
+                        fn fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+                        print fib(15);
+                        fn zero() { return 0; }
+                        fn one(a) { return a; }
+                        fn two(a, b) { return a - b; }
+                        fn three(a, b, c) { return a * b + c; }
+                        fn four(a, b, c, d) { return a + b + c + d; }
+                        print zero() + one(1) + two(5, 3) + three(2, 3, 4) + four(1, 2, 3, 4);
+                        fn none() {}
+                        print none();
+                        """, 0),
+                new Scripts.Case("closures", """
+                        fn counter() {
+                            var count = 0;
+                            fn increment() { count = count + 1; return count; }
+                            return increment;
+                        }
+                        var a = counter();
+                        var b = counter();
+                        a();
+                        print a();
+                        print b();
+                        var fns = nil;
+                        for (var i = 0; i < 3; i = i + 1) {
+                            var j = i;
+                            fn f() { return j; }
+                            if (i == 1) fns = f;
+                        }
+                        print fns();
+                        """, 0),
+                new Scripts.Case("classes", """
+                        class Shape {
+                            init(name) { this.name = name; }
+                            area() { return 0; }
+                            describe(a, b, c) { return this.name + " " + a + b + c; }
+                        }
+                        class Square < Shape {
+                            init(side) { super.init("square"); this.side = side; }
+                            area() { return this.side * this.side + super.area(); }
+                        }
+                        var s = Square(3);
+                        print s.area();
+                        print s.describe("x", "y", "z");
+                        var area = s.area;
+                        print area();
+                        s.side = 4;
+                        print s.area();
+                        print s.init(5) == s;
+                        print Square;
+                        print s;
+                        """, 0),
+                new Scripts.Case("add", "print 2 * (1 + \"a\");", 70),
+                new Scripts.Case("compare", "var s = \"a\";\nprint 1 < s;", 70),
+                new Scripts.Case("negate", "print 1 + -\"a\";", 70),
+                new Scripts.Case("arity", "fn f(a, b) {}\nprint 1;\nf(1);", 70),
+                new Scripts.Case("call", "var x = 1;\nx();", 70),
+                new Scripts.Case("property", "var x = 1;\nprint x.y;", 70),
+                new Scripts.Case("undefined", "print y;", 70)
+        );
+    }
+
+    @Test
+    void test_loop_closures() throws Exception {
+        Path script = Scripts.write(this.directory, "loops", """
+                // Called inside the loop, a closure sees the variable as it is then.
+                var shared = nil;
+                var i = 0;
+                while (i < 3) {
+                    var j = i * 10;
+                    fn f() { return i + j; }
+                    print f();
+                    if (i == 1) shared = f;
+                    i = i + 1;
+                }
+                print shared();
+
+                // Each inner loop body gets its own variables.
+                var fns = nil;
+                for (var a = 0; a < 2; a = a + 1) {
+                    for (var b = 0; b < 2; b = b + 1) {
+                        var sum = a * 2 + b;
+                        fn g() { sum = sum + 100; return sum; }
+                        if (a == 1 and b == 0) fns = g;
+                    }
+                }
+                print fns();
+                print fns();
+
+                // A function declared in a loop body can call itself.
+                for (var n = 3; n < 5; n = n + 1) {
+                    fn down(k) { if (k == 0) return "done"; return down(k - 1); }
+                    print down(n);
+                }
+                """);
+
+        Assertions.assertEquals(new Scripts.Run(0, """
+                0
+                11
+                22
+                13
+                102
+                202
+                done
+                done
+                """), Scripts.run(script, "--closures"));
+    }
+
+    @Test
+    void test_super_cache() throws Exception {
+        // A super call site caches the method it found until the superclass it
+        // sees changes, which happens when its class is declared again.
+        Path script = Scripts.write(this.directory, "super", """
+                class A {
+                    name() { return "A"; }
+                }
+                class B {
+                    name() { return "B"; }
+                }
+                fn make(Base) {
+                    class D < Base {
+                        name() { return "D>" + super.name(); }
+                    }
+                    return D();
+                }
+                var a = make(A);
+                for (var i = 0; i < 2; i = i + 1) print a.name();
+                print make(B).name();
+                print a.name();
+                class C < A {
+                    name() { return super.name; }
+                }
+                print C().name()();
+                class A {
+                    name() { return "A again"; }
+                }
+                class E < A {
+                    name() { return super.name(); }
+                }
+                print E().name();
+                print C().name()();
+                """);
+
+        for (String[] options : new String[][]{{"--closures"}, {}}) {
+            Assertions.assertEquals(new Scripts.Run(0, """
+                    D>A
+                    D>A
+                    D>B
+                    D>A
+                    A
+                    A again
+                    A
+                    """), Scripts.run(script, options), String.join(" ", options));
+        }
+    }
+
+    @Test
+    void test_invoke_arity() throws Exception {
+        // Method calls with up to three arguments have their own paths, and a
+        // field holding a function is called through each of them too.
+        String methods = """
+                class A {
+                    m0() { return 0; }
+                    m1(a) { return a; }
+                    m2(a, b) { return a + b; }
+                    m3(a, b, c) { return a + b + c; }
+                    m4(a, b, c, d) { return a + b + c + d; }
+                }
+                fn f2(a, b) { return a * b; }
+                var a = A();
+                a.f2 = f2;
+                """;
+        Path script = Scripts.write(this.directory, "invoke",
+                methods + "print a.m0() + a.m1(1) + a.m2(1, 2) + a.m3(1, 2, 3) + a.m4(1, 2, 3, 4) + a.f2(3, 4);");
+        Assertions.assertEquals(new Scripts.Run(0, "32\n"), Scripts.run(script, "--closures"));
+
+        for (int params = 0; params <= 4; params++) {
+            for (int arguments : new int[]{params - 1, params + 1}) {
+                if (arguments < 0) continue;
+
+                String call = "a.m" + params + "(" + "1, ".repeat(arguments).replaceAll(", $", "") + ");";
+                script = Scripts.write(this.directory, "m" + params + "_" + arguments, methods + call);
+                Assertions.assertEquals(new Scripts.Run(70, """
+                        Expected %d arguments but got %d.
+                        [line 11]
+                        """.formatted(params, arguments)), Scripts.run(script, "--closures"), call);
+            }
+        }
+
+        script = Scripts.write(this.directory, "field", methods + "a.f2(1);");
+        Assertions.assertEquals(new Scripts.Run(70, "Expected 2 arguments but got 1.\n[line 11]\n"),
+                Scripts.run(script, "--closures"));
+    }
+}
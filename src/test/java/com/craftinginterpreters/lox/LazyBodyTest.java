@@ -0,0 +1,128 @@
+package com.craftinginterpreters.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class LazyBodyTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_pre_parse_errors() {
+        record Test(String input, List<String> expected) {}
+        Test[] tests = new Test[]{
+                new Test("fn f(n) { for (var i = 0; i < n; i = i + 1) { if (i) print i; else print -i; } }",
+                        List.of()),
+                new Test("fn f() { class A < B { m() { return this.x; } } fn g() {} return A; }",
+                        List.of()),
+                new Test("fn f() { var a = 1 print a; }",
+                        List.of("[line 1] Error at 'print': Expect ';' after expression.")),
+                new Test("fn f() { print (1 + 2; }",
+                        List.of("[line 1] Error at ';': Expect ')' after expression.")),
+                new Test("fn f() { print 1); }",
+                        List.of("[line 1] Error at ')': Expect ';' after expression.")),
+                new Test("fn f() { g(1; 2); }",
+                        List.of("[line 1] Error at ';': Expect ')' after expression.")),
+                new Test("fn f() { g(print); }",
+                        List.of("[line 1] Error at 'print': Expect expression.")),
+                new Test("fn f() { if (a { } }",
+                        List.of("[line 1] Error at '{': Expect ')' after expression.")),
+                // Only the first error in a body, but every body is checked.
+                new Test("fn f() { (; (; }\nfn g() { var a = 1 return; }",
+                        List.of("[line 1] Error at ';': Expect ')' after expression.",
+                                "[line 2] Error at 'return': Expect ';' after expression.")),
+                new Test("fn f() { {",
+                        List.of("[line 1] Error at end: Expect '}' after block.")),
+        };
+
+        for (Test test : tests) {
+            List<String> errors = new ArrayList<>();
+            List<Stmt> statements = Scripts.collecting(errors, () -> {
+                Parser parser = new Parser(test.input());
+                parser.parseBodiesLazily();
+                return parser.parse();
+            });
+
+            Assertions.assertEquals(test.expected(), errors, test.input());
+            if (errors.isEmpty()) {
+                Assertions.assertNotNull(((Stmt.Function) statements.get(0)).lazy, test.input());
+            }
+        }
+    }
+
+    @Test
+    void test_same_slots_as_eager() {
+        String source = """
+                var global = 1;
+                fn counter(start) {
+                    var count = start;
+                    fn increment(by) {
+                        count = count + by;
+                        return count;
+                    }
+                    {
+                        var shadow = count;
+                        for (var i = 0; i < 3; i = i + 1) {
+                            var inner = i * shadow;
+                            increment(inner);
+                        }
+                    }
+                    class Box < Base {
+                        init(value) { this.value = value; }
+                        get() { return super.get() + this.value + global; }
+                    }
+                    return Box(increment);
+                }
+                fn unused(a, b) { return a or b and !a; }
+                """;
+
+        List<String> errors = new ArrayList<>();
+        List<Stmt> eager = Scripts.collecting(errors, () -> {
+            List<Stmt> statements = new Parser(source).parse();
+            new Resolver().resolve(statements);
+            return statements;
+        });
+        List<Stmt> lazy = Scripts.collecting(errors, () -> {
+            Parser parser = new Parser(source);
+            parser.parseBodiesLazily();
+            List<Stmt> statements = parser.parse();
+            new Resolver().resolve(statements);
+
+            for (Stmt statement : statements) {
+                if (statement instanceof Stmt.Function function && function.lazy != null) {
+                    Assertions.assertNull(function.body);
+                    function.lazy.parse(function);
+                }
+            }
+            return statements;
+        });
+
+        Assertions.assertEquals(List.of(), errors);
+        Assertions.assertEquals(TreeDump.dump(eager), TreeDump.dump(lazy));
+    }
+
+    @Test
+    void test_deferred_error_at_first_call() throws Exception {
+        Path script = Scripts.write(this.directory, "deferred", """
+                fn broken() {
+                    print 1 +;
+                }
+                print "before";
+                broken();
+                print "after";
+                """);
+
+        // Run as a script to see the exit code.
+        Assertions.assertEquals(new Scripts.Run(65, """
+                before
+                [line 2] Error at ';': Expect expression.
+                Function 'broken' has errors.
+                [line 1]
+                """), Scripts.run(script, "--lazy"));
+    }
+}
@@ -3,6 +3,9 @@ package com.craftinginterpreters.lox;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 class LexerTest {
     @Test
     void test_next() {
@@ -151,6 +154,67 @@ class LexerTest {
             }
         }
     }
+
+    @Test
+    void test_number() {
+        record Test(String input, double expected) {}
+        Test[] tests = new Test[]{
+                new Test("5", 5.0),
+                new Test("1024", 1024.0),
+                new Test("3.14", 3.14),
+                new Test("0.1", 0.1),
+                new Test("1234567890.0987654321", 1234567890.0987654321),
+        };
+
+        for (int i = 0; i < tests.length; ++i) {
+            Lexer lexer = new Lexer(tests[i].input, Assertions::fail);
+            Token actual = lexer.next();
+            Assertions.assertEquals(Token.TokenType.NUMBER, actual.type(), "test[" + i + "] - Type wrong");
+            Assertions.assertEquals(tests[i].expected, actual.literal(), "test[" + i + "] - Literal wrong");
+        }
+    }
+
+    @Test
+    void test_tokenize_in_parallel() {
+        String line = "var s = \"a // b\"; // \"c\n\tfn f(x) { return x * 2.5 >= 10; }\n\n";
+        String input = line.repeat((1 << 23) / line.length());
+
+        // Chunked whatever the number of cores, so the seams are always stitched.
+        TokenStream tokens = new Lexer(input, Assertions::fail).tokenize(4);
+        Lexer lexer = new Lexer(input, Assertions::fail);
+        for (int i = 0; i < tokens.size(); ++i) {
+            Token expected = lexer.next();
+            Token actual = tokens.token(i);
+            Assertions.assertEquals(expected.type(), actual.type(), "token[" + i + "] - Type wrong");
+            Assertions.assertEquals(expected.line(), actual.line(), "token[" + i + "] - Line wrong");
+            Assertions.assertEquals(expected.lexeme(), actual.lexeme(), "token[" + i + "] - Lexeme wrong");
+        }
+        Assertions.assertEquals(Token.TokenType.EOF, lexer.next().type(), "Token count wrong");
+    }
+
+    @Test
+    void test_tokenize_in_parallel_errors() {
+        String line = "var a = 1;\n".repeat(999) + "print @;\n";
+        String input = line.repeat((1 << 23) / line.length());
+
+        // As a pipeline stage would, with its own list in place around the call.
+        List<String> sequential = new ArrayList<>();
+        List<String> parallel = new ArrayList<>();
+        Lox.defer(sequential);
+        try {
+            new Lexer(input, null).tokenize(1);
+            Lox.defer(parallel);
+            new Lexer(input, null).tokenize(4);
+            Lox.report("after");
+        } finally {
+            Lox.defer(null);
+        }
+
+        Assertions.assertEquals(input.length() / line.length(), sequential.size());
+        Assertions.assertEquals("[line 1000] Error: Unexpected character.", sequential.get(0));
+        sequential.add("after");
+        Assertions.assertEquals(sequential, parallel);
+    }
 }
 
 // Note everywhere a design decision was made, abstract into submodule
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.craftinginterpreters.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class ParserTest {
+    @Test
+    void test_precedence() {
+        record Test(String input, String expected) {}
+        Test[] tests = new Test[]{
+                new Test("1 + 2 * 3;", "(+ 1.0 (* 2.0 3.0))"),
+                new Test("(1 + 2) * 3;", "(* (group (+ 1.0 2.0)) 3.0)"),
+                new Test("!a == b;", "(== (! a) b)"),
+                new Test("-a * -b;", "(* (- a) (- b))"),
+                new Test("-a.b;", "(- (get a b))"),
+                new Test("1 < 2 == 3 >= 4;", "(== (< 1.0 2.0) (>= 3.0 4.0))"),
+                new Test("a or b and c == d;", "(or a (and b (== c d)))"),
+                new Test("a = b or c;", "(assign a (or b c))"),
+                new Test("a.b(c).d = e;", "(set (call (get a b) c) d e)"),
+                new Test("f(1)(2, x + y);", "(call (call f 1.0) 2.0 (+ x y))"),
+        };
+
+        for (Test test : tests) {
+            List<String> errors = new ArrayList<>();
+            Assertions.assertEquals(test.expected(), ParserTest.parse(test.input(), errors), test.input());
+            Assertions.assertEquals(List.of(), errors, test.input());
+        }
+    }
+
+    @Test
+    void test_associativity() {
+        record Test(String input, String expected) {}
+        Test[] tests = new Test[]{
+                new Test("1 - 2 - 3;", "(- (- 1.0 2.0) 3.0)"),
+                new Test("8 / 4 / 2;", "(/ (/ 8.0 4.0) 2.0)"),
+                new Test("a == b != c;", "(!= (== a b) c)"),
+                new Test("a or b or c;", "(or (or a b) c)"),
+                new Test("a = b = c;", "(assign a (assign b c))"),
+                new Test("a.b = c.d = e;", "(set a b (set c d e))"),
+                new Test("!!a;", "(! (! a))"),
+                new Test("a.b.c;", "(get (get a b) c)"),
+        };
+
+        for (Test test : tests) {
+            List<String> errors = new ArrayList<>();
+            Assertions.assertEquals(test.expected(), ParserTest.parse(test.input(), errors), test.input());
+            Assertions.assertEquals(List.of(), errors, test.input());
+        }
+    }
+
+    @Test
+    void test_errors() {
+        record Test(String input, String expected, String error) {}
+        Test[] tests = new Test[]{
+                // The target is reported but the expression is kept.
+                new Test("a + b = c;", "(+ a b)", "[line 1] Error at '=': Invalid assignment target."),
+                new Test("-a = b;", "(- a)", "[line 1] Error at '=': Invalid assignment target."),
+                new Test("a = 1 = b;", "(assign a 1.0)", "[line 1] Error at '=': Invalid assignment target."),
+                new Test("f() = b;", "(call f)", "[line 1] Error at '=': Invalid assignment target."),
+                new Test("1 + ;", null, "[line 1] Error at ';': Expect expression."),
+                new Test("(1 + 2;", null, "[line 1] Error at ';': Expect ')' after expression."),
+                new Test("a.;", null, "[line 1] Error at ';': Expect property name after '.'."),
+                new Test("f(1;", null, "[line 1] Error at ';': Expect ')' after arguments."),
+        };
+
+        for (Test test : tests) {
+            List<String> errors = new ArrayList<>();
+            Assertions.assertEquals(test.expected(), ParserTest.parse(test.input(), errors), test.input());
+            Assertions.assertEquals(List.of(test.error()), errors, test.input());
+        }
+    }
+
+    // The expression statement in source, printed, or null if it did not parse.
+    private static String parse(String source, List<String> errors) {
+        List<Stmt> statements = Scripts.collecting(errors, () -> new Parser(source).parse());
+        if (statements.get(0) instanceof Stmt.Expression statement) {
+            return new AstPrinter().print(statement.expression);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,84 @@
+package com.craftinginterpreters.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+class PipelineTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_same_output_as_stream() throws Exception {
+        Scripts.assertSameOutput(this.directory, List.of("--stream"), List.of("--pipeline"),
+                new Scripts.Case("ok", "var a = 1;\nfn f(n) { return n + a; }\nprint f(2);\n", 0),
+                // Errors come out between the output of the declarations around them.
+                new Scripts.Case("errors", "print 1;\nprint 2 +;\nprint 3;\nvar x = @;\nprint 4;\n", 65),
+                new Scripts.Case("runtime", "print 1;\nprint \"a\" + 1;\nprint 2;\n", 70),
+                // A lexer error many chunks in, after the first batches have run.
+                new Scripts.Case("late", "print 1;\n".repeat(20000) + "print @;\nprint 2 +;\n", 65),
+                // A runtime error at the start of a long script, so the pipeline is
+                // closed while the stages are still lexing and parsing.
+                new Scripts.Case("early", "print nil + 1;\n" + "print 1;\n".repeat(200000), 70)
+        );
+    }
+
+    @Test
+    void test_late_lexer_error() throws Exception {
+        Path script = Scripts.write(this.directory, "late", "print 1;\n".repeat(20000) + "print @;\n");
+
+        // The declarations before it have run by the time it is reported, and
+        // nothing runs after it.
+        Assertions.assertEquals(new Scripts.Run(65, "1\n".repeat(20000) + """
+                [line 20001] Error: Unexpected character.
+                [line 20001] Error at ';': Expect expression.
+                """), Scripts.run(script, "--pipeline"));
+    }
+
+    @Test
+    void test_close_stops_the_stages() {
+        // Far more than the queues hold, so both stages are waiting when it closes.
+        Pipeline pipeline = new Pipeline("print 1;\n".repeat(200000));
+        Assertions.assertTrue(pipeline.hasNext());
+        pipeline.next();
+
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), pipeline::close);
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            Assertions.assertFalse(thread.getName().startsWith("lox-"), thread.getName());
+        }
+    }
+
+    @Test
+    void test_failure_is_rethrown() {
+        // A source that fails part way through, on the lexer's thread.
+        String text = "print 1;\n".repeat(20000);
+        CharSequence source = new CharSequence() {
+            @Override
+            public int length() {
+                return text.length();
+            }
+
+            @Override
+            public char charAt(int index) {
+                if (index > text.length() / 2) throw new IllegalStateException("unreadable");
+                return text.charAt(index);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return text.subSequence(start, end);
+            }
+        };
+
+        try (Pipeline pipeline = new Pipeline(source)) {
+            IllegalStateException failure = Assertions.assertThrows(IllegalStateException.class, () -> {
+                while (pipeline.hasNext()) pipeline.next();
+            });
+            Assertions.assertEquals("unreadable", failure.getMessage());
+        }
+    }
+}
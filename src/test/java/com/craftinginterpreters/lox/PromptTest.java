@@ -0,0 +1,63 @@
+package com.craftinginterpreters.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+class PromptTest {
+    @Test
+    void test_read_line() {
+        Prompt prompt = new Prompt(new ByteArrayInputStream(
+                "print 1;\nprint \"é\";\r\n\nlast".getBytes(StandardCharsets.UTF_8)
+        ));
+
+        Assertions.assertEquals("print 1;", prompt.readLine());
+        Assertions.assertEquals("print \"é\";", prompt.readLine());
+        Assertions.assertEquals("", prompt.readLine());
+        Assertions.assertEquals("last", prompt.readLine());
+        Assertions.assertNull(prompt.readLine());
+    }
+
+    @Test
+    void test_read_line_as_typed() {
+        Terminal terminal = new Terminal("1\n", "var a = 2;\n");
+        Prompt prompt = new Prompt(terminal);
+
+        // Shorter than a byte order mark, and still returned at once.
+        Assertions.assertEquals("1", prompt.readLine());
+        terminal.typed++;
+        Assertions.assertEquals("var a = 2;", prompt.readLine());
+        terminal.typed++;
+        Assertions.assertNull(prompt.readLine());
+    }
+
+    // Returns one line per read, and fails where a terminal would block waiting
+    // for a line that has not been typed yet.
+    private static final class Terminal extends InputStream {
+        private final String[] lines;
+        private int read = 0;
+        int typed = 1;
+
+        Terminal(String... lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (this.read == this.lines.length) return -1;
+            if (this.read == this.typed) throw new AssertionError("A read would have blocked.");
+
+            byte[] line = this.lines[this.read++].getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(line, 0, buffer, offset, line.length);
+            return line.length;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.craftinginterpreters.lox;
+
+import org.junit.jupiter.api.Assertions;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Runs Lox for the tests: whole scripts in a child JVM, to see what they print
+// and how they exit, and front-end stages in this one with their errors kept.
+final class Scripts {
+    private Scripts() {
+        super();
+    }
+
+    record Run(int status, String output) {}
+
+    record Case(String name, String source, int status) {}
+
+    static Path write(Path directory, String name, String source) throws Exception {
+        Path script = directory.resolve(name + ".lox");
+        Files.writeString(script, source);
+        return script;
+    }
+
+    static Run run(Path script, String... options) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", Path.of(Lox.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString(),
+                Lox.class.getName()
+        );
+        builder.command().addAll(List.of(options));
+        builder.command().add(script.toString());
+
+        Process process = builder.redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        return new Run(process.waitFor(), output);
+    }
+
+    // Runs each case with the reference options and with the options. The
+    // reference has to exit with the case's status and the other has to print
+    // and exit the same.
+    static void assertSameOutput(Path directory, List<String> reference, List<String> options, Case... cases)
+            throws Exception {
+        for (Case test : cases) {
+            Path script = Scripts.write(directory, test.name(), test.source());
+
+            Run expected = Scripts.run(script, reference.toArray(String[]::new));
+            Run actual = Scripts.run(script, options.toArray(String[]::new));
+
+            Assertions.assertEquals(test.status(), expected.status(), test.name() + ": " + expected.output());
+            Assertions.assertEquals(expected, actual, test.name());
+        }
+    }
+
+    // Runs a stage with errors added to the list instead of printed.
+    static <T> T collecting(List<String> errors, Supplier<T> stage) {
+        List<String> previous = Lox.defer(errors);
+        try {
+            return stage.get();
+        } finally {
+            Lox.defer(previous);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+// Prints a resolved program with everything the backends read from it: token
+// types and lines, literal types, and the depths, slots and frame sizes the
+// resolver fills in. Two programs that print the same run the same.
+final class TreeDump implements Expr.Visitor<Void>, Stmt.Visitor {
+    private final StringBuilder out = new StringBuilder();
+
+    static String dump(List<Stmt> statements) {
+        TreeDump dump = new TreeDump();
+        dump.statements(statements);
+        return dump.out.toString();
+    }
+
+    @Override
+    public void visitBlockStmt(Stmt.Block stmt) {
+        this.open("block").field("frameSize", stmt.frameSize);
+        this.statements(stmt.statements);
+        this.close();
+    }
+
+    @Override
+    public void visitClassStmt(Stmt.Class stmt) {
+        this.open("class").token(stmt.name).field("slot", stmt.slot);
+        if (stmt.superclass != null) stmt.superclass.accept(this);
+        for (Stmt.Function method : stmt.methods) method.accept(this);
+        this.close();
+    }
+
+    @Override
+    public void visitExpressionStmt(Stmt.Expression stmt) {
+        this.open("expression");
+        stmt.expression.accept(this);
+        this.close();
+    }
+
+    @Override
+    public void visitFunctionStmt(Stmt.Function stmt) {
+        this.open("fn").token(stmt.name)
+                .field("slot", stmt.slot)
+                .field("frameSize", stmt.frameSize)
+                .field("isMethod", stmt.isMethod);
+        for (Token param : stmt.params) this.token(param);
+        if (stmt.body == null) {
+            this.out.append(" lazy");
+        } else {
+            this.statements(stmt.body);
+        }
+        this.close();
+    }
+
+    @Override
+    public void visitIfStmt(Stmt.If stmt) {
+        this.open("if");
+        stmt.condition.accept(this);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+        this.close();
+    }
+
+    @Override
+    public void visitPrintStmt(Stmt.Print stmt) {
+        this.open("print");
+        stmt.expression.accept(this);
+        this.close();
+    }
+
+    @Override
+    public void visitReturnStmt(Stmt.Return stmt) {
+        this.open("return").token(stmt.keyword);
+        if (stmt.value != null) stmt.value.accept(this);
+        this.close();
+    }
+
+    @Override
+    public void visitVarStmt(Stmt.Var stmt) {
+        this.open("var").token(stmt.name).field("slot", stmt.slot);
+        if (stmt.initializer != null) stmt.initializer.accept(this);
+        this.close();
+    }
+
+    @Override
+    public void visitWhileStmt(Stmt.While stmt) {
+        this.open("while");
+        stmt.condition.accept(this);
+        stmt.body.accept(this);
+        this.close();
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        this.open("assign").token(expr.name).field("depth", expr.depth).field("slot", expr.slot);
+        expr.value.accept(this);
+        return this.close();
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        this.open("binary").token(expr.operator);
+        expr.left.accept(this);
+        expr.right.accept(this);
+        return this.close();
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        this.open("call").token(expr.paren);
+        expr.callee.accept(this);
+        for (Expr argument : expr.arguments) argument.accept(this);
+        return this.close();
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        this.open("get").token(expr.name);
+        expr.object.accept(this);
+        return this.close();
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        this.open("group");
+        expr.expression.accept(this);
+        return this.close();
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        this.open("literal");
+        if (expr.value != null) {
+            this.out.append(' ').append(expr.value.getClass().getSimpleName()).append(' ').append(expr.value);
+        }
+        return this.close();
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        this.open("logical").token(expr.operator);
+        expr.left.accept(this);
+        expr.right.accept(this);
+        return this.close();
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        this.open("set").token(expr.name);
+        expr.object.accept(this);
+        expr.value.accept(this);
+        return this.close();
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        this.open("super").token(expr.keyword).token(expr.method).field("depth", expr.depth);
+        return this.close();
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        this.open("this").token(expr.keyword).field("depth", expr.depth).field("slot", expr.slot);
+        return this.close();
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        this.open("unary").token(expr.operator);
+        expr.right.accept(this);
+        return this.close();
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        this.open("variable").token(expr.name).field("depth", expr.depth).field("slot", expr.slot);
+        return this.close();
+    }
+
+    private void statements(List<Stmt> statements) {
+        for (Stmt statement : statements) statement.accept(this);
+    }
+
+    private TreeDump open(String node) {
+        this.out.append('(').append(node);
+        return this;
+    }
+
+    private Void close() {
+        this.out.append(')');
+        return null;
+    }
+
+    private TreeDump token(Token token) {
+        this.out.append(' ').append(token.type()).append(':').append(token.lexeme()).append('@').append(token.line());
+        return this;
+    }
+
+    private TreeDump field(String name, Object value) {
+        this.out.append(' ').append(name).append('=').append(value);
+        return this;
+    }
+}
@@ -0,0 +1,341 @@
+package com.craftinginterpreters.lox;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+class VmTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_same_output_as_interpreter() throws Exception {
+        Scripts.assertSameOutput(this.directory, List.of(), List.of("--vm"),
+                new Scripts.Case("expressions", """
+                        var a = 7;
+                        var b = 2;
+                        print a + b * 3 - a / b;
+                        print -(a - b) * -b;
+                        print a > b == !(a <= b);
+                        print a < b or "right";
+                        print nil and 1;
+                        print "a" + "b" == "ab";
+                        print nil == false;
+                        print 0.1 + 0.2;
+                        """, 0),
+                new Scripts.Case("control", """
+                        var total = 0;
+                        for (var i = 0; i < 10; i = i + 1) {
+                            if (i == 3) total = total + 100; else total = total + i;
+                        }
+                        print total;
+                        var j = 3;
+                        while (j > 0) { print j; j = j - 1; }
+                        {
+                            var shadow = "inner";
+                            { var shadow = "innermost"; print shadow; }
+                            print shadow;
+                        }
+                        """, 0),
+                new Scripts.Case("closures", """
+                        fn counter() {
+                            var count = 0;
+                            fn increment() { count = count + 1; return count; }
+                            return increment;
+                        }
+                        var a = counter();
+                        var b = counter();
+                        a();
+                        print a();
+                        print b();
+                        fn outer() {
+                            var x = "outer";
+                            fn middle() {
+                                fn inner() { return x; }
+                                x = "changed";
+                                return inner;
+                            }
+                            return middle();
+                        }
+                        print outer()();
+                        var fns = nil;
+                        for (var i = 0; i < 3; i = i + 1) {
+                            var j = i;
+                            fn f() { return j; }
+                            if (i == 1) fns = f;
+                        }
+                        print fns();
+                        fn fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+                        print fib(15);
+                        print fib;
+                        print clock() > 0;
+                        """, 0),
+                new Scripts.Case("classes", """
+                        class Point {
+                            init(x, y) { this.x = x; this.y = y; }
+                            sum() { return this.x + this.y; }
+                            scaled(k) { return Point(this.x * k, this.y * k); }
+                        }
+                        var p = Point(1, 2);
+                        print p.sum();
+                        print p.scaled(3).sum();
+                        var sum = p.sum;
+                        p.x = 10;
+                        print sum();
+                        p.extra = "field";
+                        print p.extra;
+                        print Point;
+                        print p;
+                        """, 0),
+                new Scripts.Case("super", """
+                        class A {
+                            name() { return "A"; }
+                            describe() { return "I am " + this.name(); }
+                        }
+                        class B < A {
+                            name() { return "B"; }
+                            parent() { return super.name(); }
+                        }
+                        class C < B {
+                            name() { return "C+" + super.name(); }
+                            method() { var m = super.describe; return m(); }
+                        }
+                        var c = C();
+                        print c.describe();
+                        print c.parent();
+                        print c.method();
+                        """, 0),
+                // An initializer always returns the instance, even from an early return.
+                new Scripts.Case("init", """
+                        class A {
+                            init(x) {
+                                this.x = x;
+                                if (x > 1) return;
+                                this.x = "small";
+                            }
+                        }
+                        var a = A(1);
+                        print a.x;
+                        print A(5).x;
+                        print a.init(9) == a;
+                        print a.x;
+                        class B < A {
+                            init() { super.init(2); this.y = this.x + 1; }
+                        }
+                        print B().y;
+                        """, 0),
+                new Scripts.Case("add", "print 1;\nprint 2 * (1 + \"a\");\nprint 3;", 70),
+                new Scripts.Case("negate", "print -\"a\";", 70),
+                new Scripts.Case("compare", "print 1 < nil;", 70),
+                new Scripts.Case("arity", "fn f(a, b) {}\nprint 1;\nf(1);", 70),
+                new Scripts.Case("call", "var x = 1;\nx();", 70),
+                new Scripts.Case("property", "var x = 1;\nprint x.y;", 70),
+                new Scripts.Case("field", "class A {}\nprint A().missing;", 70),
+                new Scripts.Case("inherit", "var NotAClass = 1;\nclass A < NotAClass {}", 70),
+                new Scripts.Case("undefined", "print y;", 70),
+                new Scripts.Case("assign", "y = 1;", 70),
+                // A runtime error deep in a call stack reports the line it happened on.
+                new Scripts.Case("nested", """
+                        fn a() { return b(); }
+                        fn b() {
+                            return nil + 1;
+                        }
+                        print "before";
+                        a();
+                        print "after";
+                        """, 70)
+        );
+    }
+
+    @Test
+    void test_upvalues() throws Exception {
+        Path script = Scripts.write(this.directory, "upvalues", """
+                fn counter() {
+                    var count = 0;
+                    fn increment() { count = count + 1; return count; }
+                    fn get() { return count; }
+                    increment();
+                    increment();
+                    print get();
+                    return get;
+                }
+                var get = counter();
+                print get();
+
+                // One variable for the whole loop, closed when the loop ends.
+                var first = nil;
+                var last = nil;
+                for (var i = 0; i < 3; i = i + 1) {
+                    fn f() { return i; }
+                    if (i == 0) first = f;
+                    last = f;
+                }
+                print first();
+                print last();
+
+                // A fresh variable each iteration, closed at the end of each.
+                for (var i = 0; i < 3; i = i + 1) {
+                    var j = i;
+                    fn f() { return j; }
+                    if (i == 0) first = f;
+                    last = f;
+                }
+                print first();
+                print last();
+
+                {
+                    var a = "a";
+                    var b = "b";
+                    fn both() { return a + b; }
+                    b = "B";
+                    first = both;
+                }
+                print first();
+
+                // Through a function that does not use it itself, while still open.
+                fn outer() {
+                    var x = "x";
+                    fn middle() {
+                        fn inner() { x = x + "!"; return x; }
+                        return inner;
+                    }
+                    var inner = middle();
+                    inner();
+                    print x;
+                    return inner;
+                }
+                print outer()();
+                """);
+
+        Assertions.assertEquals(new Scripts.Run(0, """
+                2
+                2
+                3
+                3
+                0
+                2
+                aB
+                x!
+                x!!
+                """), Scripts.run(script, "--vm"));
+    }
+
+    @Test
+    void test_super_invoke() throws Exception {
+        Path script = Scripts.write(this.directory, "super", """
+                class A {
+                    init(x) { this.x = x; }
+                    name() { return "A" + this.x; }
+                    add(a, b) { return a + b; }
+                }
+                class B < A {
+                    init(x) { super.init(x + x); }
+                    name() { return "B>" + super.name(); }
+                    add(a, b) { return super.add(a, b) * 2; }
+                    later() {
+                        fn f() { return super.name(); }
+                        return f;
+                    }
+                }
+                var b = B("1");
+                for (var i = 0; i < 2; i = i + 1) print b.name();
+                print b.add(1, 2);
+                print b.later()();
+
+                // The same super call site under a different superclass each time.
+                fn make(Base) {
+                    class D < Base {
+                        name() { return "D>" + super.name(); }
+                    }
+                    return D;
+                }
+                class C {
+                    name() { return "C"; }
+                }
+                print make(A)("1").name();
+                print make(C)().name();
+                print make(A)("2").name();
+
+                class E < A {
+                    name() { return super.missing(); }
+                }
+                E("1").name();
+                """);
+
+        Assertions.assertEquals(new Scripts.Run(70, """
+                B>A11
+                B>A11
+                6
+                A11
+                D>A1
+                D>C
+                D>A2
+                Undefined property 'missing'.
+                [line 35]
+                """), Scripts.run(script, "--vm"));
+    }
+
+    @Test
+    void test_arity() throws Exception {
+        record Test(String name, String source, String error) {}
+        Test[] tests = new Test[]{
+                new Test("function", "fn f(a, b) {}\nf(1, 2, 3);",
+                        "Expected 2 arguments but got 3.\n[line 2]"),
+                new Test("invoke", "class A { m(a) {} }\nvar a = A();\na.m();",
+                        "Expected 1 arguments but got 0.\n[line 3]"),
+                new Test("bound", "class A { m(a) {} }\nvar m = A().m;\nm(1, 2);",
+                        "Expected 1 arguments but got 2.\n[line 3]"),
+                new Test("field", "fn f(a) {}\nclass A {}\nvar a = A();\na.f = f;\na.f();",
+                        "Expected 1 arguments but got 0.\n[line 5]"),
+                new Test("initializer", "class A { init(a, b) {} }\nA(1);",
+                        "Expected 2 arguments but got 1.\n[line 2]"),
+                new Test("inherited", "class A { init(a) {} }\nclass B < A {}\nB();",
+                        "Expected 1 arguments but got 0.\n[line 3]"),
+                new Test("class", "class A {}\nA(1);",
+                        "Expected 0 arguments but got 1.\n[line 2]"),
+                new Test("super", "class A { m(a) {} }\nclass B < A {\nm() { super.m(); }\n}\nB().m();",
+                        "Expected 1 arguments but got 0.\n[line 3]"),
+                new Test("native", "clock(1);",
+                        "Expected 0 arguments but got 1.\n[line 1]"),
+                // Reported at the closing parenthesis.
+                new Test("lines", "fn f(a) {}\nf(\n1,\n2\n);",
+                        "Expected 1 arguments but got 2.\n[line 5]"),
+        };
+
+        for (Test test : tests) {
+            Path script = Scripts.write(this.directory, test.name(), test.source());
+            Assertions.assertEquals(new Scripts.Run(70, test.error() + "\n"), Scripts.run(script, "--vm"), test.name());
+        }
+    }
+
+    @Test
+    void test_stack_overflow() throws Exception {
+        // The tree-walker runs out of Java stack first, so this is checked on its own.
+        // The script's frame and 4095 calls fill the 4096 frames.
+        record Test(String name, int depth, Scripts.Run expected) {}
+        Test[] tests = new Test[]{
+                new Test("deepest", 4094, new Scripts.Run(0, "4094\n")),
+                new Test("overflow", 4095, new Scripts.Run(70, "Stack overflow.\n[line 1]\n")),
+        };
+
+        for (Test test : tests) {
+            Path script = Scripts.write(this.directory, test.name(), """
+                    fn f(n) { if (n == 0) return 0; return f(n - 1) + 1; }
+                    print f(%d);
+                    """.formatted(test.depth()));
+
+            Assertions.assertEquals(test.expected(), Scripts.run(script, "--vm"), test.name());
+        }
+
+        Path script = Scripts.write(this.directory, "unbounded", """
+                fn f(n) { return f(n + 1); }
+                print "before";
+                f(0);
+                print "after";
+                """);
+        Assertions.assertEquals(new Scripts.Run(70, "before\nStack overflow.\n[line 1]\n"), Scripts.run(script, "--vm"));
+    }
+}
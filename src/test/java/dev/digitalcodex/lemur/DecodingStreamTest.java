@@ -0,0 +1,220 @@
+package dev.digitalcodex.lemur;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+
+class DecodingStreamTest {
+    @Test
+    void test_decode() {
+        record Test(CharacterEncoding encoding, int[] input, String expected) {}
+        Test[] tests = new Test[]{
+                new Test(CharacterEncoding.US_ASCII, bytes('v', 'a', 'r'), "var"),
+                new Test(CharacterEncoding.US_ASCII, bytes('a', 0xe9, 'b'), "a�b"),
+                new Test(CharacterEncoding.UTF_8, bytes('a', 0, 'b'), "a\0b"),
+                new Test(CharacterEncoding.UTF_8, bytes(0xc3, 0xa9), "é"),
+                new Test(CharacterEncoding.UTF_8, bytes(0xe2, 0x82, 0xac), "€"),
+                new Test(CharacterEncoding.UTF_8, bytes(0xf0, 0x9f, 0x98, 0x80), "😀"),
+                new Test(CharacterEncoding.UTF_16, bytes(0x00, 'h', 0x00, 'i'), "hi"),
+                new Test(CharacterEncoding.UTF_16, bytes(0xd8, 0x3d, 0xde, 0x00), "😀"),
+                new Test(CharacterEncoding.UTF_32, bytes(0, 0, 0, 'h', 0, 0x01, 0xf6, 0x00), "h😀"),
+        };
+
+        for (Test test : tests) {
+            Assertions.assertEquals(test.expected(), readAll(test.encoding(), test.input(), 8192));
+        }
+    }
+
+    @Test
+    void test_byte_order_mark() {
+        record Test(CharacterEncoding encoding, int[] input, String expected) {}
+        Test[] tests = new Test[]{
+                new Test(CharacterEncoding.UTF_8, bytes(0xef, 0xbb, 0xbf, 'h', 'i'), "hi"),
+                // Only a leading mark is one.
+                new Test(CharacterEncoding.UTF_8, bytes('h', 0xef, 0xbb, 0xbf), "h﻿"),
+                new Test(CharacterEncoding.UTF_16, bytes(0xfe, 0xff, 0x00, 'h', 0x00, 'i'), "hi"),
+                new Test(CharacterEncoding.UTF_16, bytes(0xff, 0xfe, 'h', 0x00, 'i', 0x00), "hi"),
+                new Test(CharacterEncoding.UTF_32, bytes(0, 0, 0xfe, 0xff, 0, 0, 0, 'h'), "h"),
+                new Test(CharacterEncoding.UTF_32, bytes(0xff, 0xfe, 0, 0, 'h', 0, 0, 0), "h"),
+                // Shorter than a mark.
+                new Test(CharacterEncoding.UTF_8, bytes('h'), "h"),
+                new Test(CharacterEncoding.UTF_32, bytes(), ""),
+        };
+
+        for (Test test : tests) {
+            Assertions.assertEquals(test.expected(), readAll(test.encoding(), test.input(), 8192));
+        }
+    }
+
+    @Test
+    void test_malformed() {
+        record Test(CharacterEncoding encoding, int[] input, String expected) {}
+        Test[] tests = new Test[]{
+                new Test(CharacterEncoding.UTF_8, bytes(0x80, 'a'), "�a"),
+                new Test(CharacterEncoding.UTF_8, bytes(0xe2, 0x41), "�A"),
+                new Test(CharacterEncoding.UTF_8, bytes(0xe2, 0x41, 0x42, 0x43), "�ABC"),
+                new Test(CharacterEncoding.UTF_8, bytes(0xe2, 0x82, 'x', 0xac), "�x�"),
+                // Overlong, surrogate and out of range forms.
+                new Test(CharacterEncoding.UTF_8, bytes(0xc0, 0x80), "��"),
+                new Test(CharacterEncoding.UTF_8, bytes(0xe0, 0x80, 0x80), "���"),
+                new Test(CharacterEncoding.UTF_8, bytes(0xed, 0xa0, 0x80), "�"),
+                new Test(CharacterEncoding.UTF_8, bytes(0xf4, 0x90, 0x80, 0x80), "����"),
+                new Test(CharacterEncoding.UTF_32, bytes(0, 0x11, 0, 0), "�"),
+                new Test(CharacterEncoding.UTF_32, bytes(0, 0, 0xd8, 0), "�"),
+        };
+
+        for (Test test : tests) {
+            Assertions.assertEquals(test.expected(), readAll(test.encoding(), test.input(), 8192));
+        }
+    }
+
+    @Test
+    void test_truncated() {
+        record Test(CharacterEncoding encoding, int[] input, String expected) {}
+        Test[] tests = new Test[]{
+                new Test(CharacterEncoding.UTF_8, bytes('a', 0xe2), "a�"),
+                new Test(CharacterEncoding.UTF_8, bytes('a', 0xe2, 0x82), "a�"),
+                new Test(CharacterEncoding.UTF_8, bytes(0xf0, 0x9f, 0x98), "�"),
+                new Test(CharacterEncoding.UTF_8, bytes(0xf0, 0x9f, 'a'), "�a"),
+                new Test(CharacterEncoding.UTF_16, bytes(0x00, 'h', 0x00), "h�"),
+                new Test(CharacterEncoding.UTF_32, bytes(0, 0, 0, 'h', 0, 0), "h�"),
+        };
+
+        for (Test test : tests) {
+            Assertions.assertEquals(test.expected(), readAll(test.encoding(), test.input(), 8192));
+        }
+    }
+
+    @Test
+    void test_matches_charset_decoder() {
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            byte[] input = new byte[random.nextInt(16)];
+            for (int j = 0; j < input.length; j++) {
+                // Mostly bytes that can lead or continue a sequence.
+                input[j] = (byte) switch (random.nextInt(4)) {
+                    case 0 -> random.nextInt(0x80);
+                    case 1 -> 0x80 + random.nextInt(0x40);
+                    default -> 0xc0 + random.nextInt(0x40);
+                };
+            }
+            if (input.length >= 3 && (input[0] & 0xff) == 0xef) continue;
+
+            String expected = new String(input, StandardCharsets.UTF_8);
+            // Small buffers, so sequences straddle refills.
+            int capacity = 4 + random.nextInt(4);
+            Assertions.assertEquals(expected, readAll(new ByteArrayInputStream(input), capacity));
+        }
+    }
+
+    @Test
+    void test_partial_read() {
+        // Each read of the input returns the next chunk, as a pipe would, and fails
+        // rather than block once there are none.
+        Chunks in = new Chunks(bytes('a', 'b'), bytes('c', 0xe2, 0x82), bytes(0xac, '\n'));
+        DecodingStream stream = new DecodingStream(in, CharacterEncoding.UTF_8);
+        char[] buffer = new char[16];
+
+        Assertions.assertEquals(2, stream.read(buffer, 0, buffer.length));
+        Assertions.assertEquals("ab", new String(buffer, 0, 2));
+
+        // The euro sign is not all there yet, so only 'c' is returned.
+        Assertions.assertEquals(1, stream.read(buffer, 0, buffer.length));
+        Assertions.assertEquals("c", new String(buffer, 0, 1));
+
+        Assertions.assertEquals(2, stream.read(buffer, 0, buffer.length));
+        Assertions.assertEquals("€\n", new String(buffer, 0, 2));
+
+        in.end();
+        Assertions.assertEquals(-1, stream.read(buffer, 0, buffer.length));
+        Assertions.assertEquals(CharacterStream.EOF, stream.read());
+    }
+
+    @Test
+    void test_surrogate_pair_across_reads() {
+        DecodingStream stream = new DecodingStream(
+                new ByteArrayInputStream(new byte[]{(byte) 0xf0, (byte) 0x9f, (byte) 0x98, (byte) 0x80, 'a'}),
+                CharacterEncoding.UTF_8
+        );
+        char[] buffer = new char[1];
+
+        Assertions.assertEquals(1, stream.read(buffer, 0, 1));
+        Assertions.assertEquals('\ud83d', buffer[0]);
+        Assertions.assertEquals('\ude00', stream.read());
+        Assertions.assertEquals('a', stream.read());
+        Assertions.assertEquals(CharacterStream.EOF, stream.read());
+    }
+
+    private static int[] bytes(int... bytes) {
+        return bytes;
+    }
+
+    private static String readAll(CharacterEncoding encoding, int[] input, int capacity) {
+        byte[] bytes = new byte[input.length];
+        for (int i = 0; i < input.length; i++) bytes[i] = (byte) input[i];
+
+        String single = readAll(new DecodingStream(new ByteArrayInputStream(bytes), encoding, capacity));
+        String bulk = readAll(new ByteArrayInputStream(bytes), encoding, capacity);
+        Assertions.assertEquals(single, bulk);
+        return single;
+    }
+
+    private static String readAll(InputStream in, int capacity) {
+        return readAll(in, CharacterEncoding.UTF_8, capacity);
+    }
+
+    private static String readAll(InputStream in, CharacterEncoding encoding, int capacity) {
+        DecodingStream stream = new DecodingStream(in, encoding, capacity);
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[3];
+        for (int n; (n = stream.read(buffer, 0, buffer.length)) >= 0; ) {
+            text.append(buffer, 0, n);
+        }
+        return text.toString();
+    }
+
+    private static String readAll(DecodingStream stream) {
+        StringBuilder text = new StringBuilder();
+        for (int c; (c = stream.read()) != CharacterStream.EOF; ) {
+            text.append((char) c);
+        }
+        return text.toString();
+    }
+
+    private static final class Chunks extends InputStream {
+        private final Queue<int[]> chunks = new ArrayDeque<>();
+        private boolean ended = false;
+
+        Chunks(int[]... chunks) {
+            for (int[] chunk : chunks) this.chunks.add(chunk);
+        }
+
+        void end() {
+            this.ended = true;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (this.chunks.isEmpty()) {
+                if (this.ended) return -1;
+                throw new AssertionError("A read would have blocked.");
+            }
+
+            int[] chunk = this.chunks.remove();
+            Assertions.assertTrue(chunk.length <= length);
+            for (int i = 0; i < chunk.length; i++) buffer[offset + i] = (byte) chunk[i];
+            return chunk.length;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package dev.digitalcodex.lemur;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class MappedStreamTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void test_index_of() throws IOException {
+        record Test(String input, char c) {}
+        Test[] tests = new Test[]{
+                new Test("", '\n'),
+                new Test("no match here", '\n'),
+                new Test("\n", '\n'),
+                new Test("a\nb\nc\n", '\n'),
+                new Test("0123456\n89abcde\"ghijklmnopqrs\"uvwxyz\n", '"'),
+                // Bytes that differ from the target by one, to catch borrows across a word.
+                new Test("\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\"\"!", '"'),
+                new Test("!!!!!!!!\"!!!!!!!!!!!!!!\"", '"'),
+                new Test("// comment\n// another comment\nvar a = \"a string\";\n", '\n'),
+        };
+
+        for (Test test : tests) {
+            try (MappedStream stream = this.map(test.input(), CharacterEncoding.US_ASCII)) {
+                for (int from = 0; from <= test.input().length(); from++) {
+                    for (int to = from; to <= test.input().length(); to++) {
+                        int expected = test.input().substring(0, to).indexOf(test.c(), from);
+                        Assertions.assertEquals(expected, stream.indexOf(test.c(), from, to),
+                                test.input() + " [" + from + ", " + to + ")");
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_index_of_decoded() throws IOException {
+        String input = "héllo\nwörld\n\"ünïcode\"";
+        try (MappedStream stream = this.map(input, CharacterEncoding.UTF_8)) {
+            Assertions.assertEquals(input.length(), stream.length());
+            Assertions.assertEquals(input.indexOf('\n', 6), stream.indexOf('\n', 6, stream.length()));
+            Assertions.assertEquals(input.indexOf('ü'), stream.indexOf('ü', 0, stream.length()));
+            Assertions.assertEquals(-1, stream.indexOf('z', 0, stream.length()));
+        }
+    }
+
+    @Test
+    void test_closed_stream_fails_to_read() throws IOException {
+        MappedStream stream = this.map("var a = 1;", CharacterEncoding.UTF_8);
+        Assertions.assertEquals('v', stream.charAt(0));
+
+        stream.close();
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> stream.charAt(0));
+    }
+
+    private MappedStream map(String text, CharacterEncoding encoding) throws IOException {
+        Path path = Files.createTempFile(this.directory, "source", ".lox");
+        Files.writeString(path, text, StandardCharsets.UTF_8);
+        return new MappedStream(path, encoding);
+    }
+}
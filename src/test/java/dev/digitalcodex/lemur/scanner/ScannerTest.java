@@ -0,0 +1,48 @@
+package dev.digitalcodex.lemur.scanner;
+
+import dev.digitalcodex.lemur.CharacterStream;
+import dev.digitalcodex.lemur.StringStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ScannerTest {
+    @Test
+    void test_next() {
+        Scanner scanner = new Scanner(new StringStream("a\0b"));
+
+        Assertions.assertEquals('a', scanner.next());
+        // NUL is a character like any other.
+        Assertions.assertEquals('\0', scanner.next());
+        Assertions.assertFalse(scanner.isAtEnd());
+        Assertions.assertEquals('b', scanner.next());
+        Assertions.assertTrue(scanner.isAtEnd());
+        Assertions.assertEquals(CharacterStream.EOF, scanner.next());
+        Assertions.assertEquals(CharacterStream.EOF, scanner.peek());
+    }
+
+    @Test
+    void test_lookahead_across_wrap() {
+        String input = "abcdefghijklmnopqrstuvwxyz0123456789";
+        // A ring of eight characters, so lookahead wraps around it every few reads.
+        Scanner scanner = new Scanner(new StringStream(input), 8);
+
+        for (int i = 0; i < input.length(); i++) {
+            for (int k = 0; k < 8; k++) {
+                int expected = i + k < input.length() ? input.charAt(i + k) : CharacterStream.EOF;
+                Assertions.assertEquals(expected, scanner.peek(k), "peek(" + k + ") at " + i);
+            }
+            Assertions.assertEquals(input.charAt(i), scanner.next());
+        }
+        Assertions.assertEquals(CharacterStream.EOF, scanner.next());
+    }
+
+    @Test
+    void test_lookahead_outside_buffer() {
+        Scanner scanner = new Scanner(new StringStream("abc"), 4);
+
+        Assertions.assertEquals('c', scanner.peek(2));
+        Assertions.assertEquals(CharacterStream.EOF, scanner.peek(3));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> scanner.peek(4));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> scanner.peek(-1));
+    }
+}